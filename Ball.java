@@ -1,9 +1,12 @@
+import java.awt.*;
+import java.awt.geom.*;
+
 /**
  * Models a simple solid sphere. 
  * This class represents a Ball object. When combined with the GameArena class,
  * instances of the Ball class can be displayed on the screen.
  */
-public class Ball 
+public class Ball implements Drawable
 {
 	// The following instance variables define the
 	// information needed to represent a Ball
@@ -15,6 +18,8 @@ public class Ball
 	private double size;				// The diameter of this Ball
 	private int layer;					// The layer of this ball is on.
 	private String colour;				// The colour of this Ball
+	private Color resolvedColour;		// The colour of this Ball, ready for drawing
+	private GameArena arena;			// The GameArena this Ball has been added to, if any
 
 										// Permissable colours are:
 										// BLACK, BLUE, CYAN, DARKGREY, GREY,
@@ -33,7 +38,7 @@ public class Ball
 		this.xPosition = x;
 		this.yPosition = y;
 		this.size = diameter;
-		this.colour = col;
+		this.setColour(col);
 		this.layer = 0;
 	}	
 
@@ -50,7 +55,7 @@ public class Ball
 		this.xPosition = x;
 		this.yPosition = y;
 		this.size = diameter;
-		this.colour = col;
+		this.setColour(col);
 		this.layer = layer;
 	}	
 
@@ -78,7 +83,9 @@ public class Ball
 	 */
 	public void setXPosition(double x)
 	{
+		Rectangle2D before = this.getBounds();
 		this.xPosition = x;
+		this.invalidate(before);
 	}
 
 	/**
@@ -87,7 +94,9 @@ public class Ball
 	 */
 	public void setYPosition(double y)
 	{
+		Rectangle2D before = this.getBounds();
 		this.yPosition = y;
+		this.invalidate(before);
 	}
 
 	/**
@@ -105,7 +114,9 @@ public class Ball
 	 */
 	public void setSize(double s)
 	{
+		Rectangle2D before = this.getBounds();
 		size = s;
+		this.invalidate(before);
 	}
 
 	/**
@@ -123,7 +134,16 @@ public class Ball
 	 */
 	public void setLayer(int l)
 	{
+		GameArena a = arena;
+
+		// Take this Ball out of the GameArena and put it back, so that it is drawn in the right place.
+		if (a != null)
+			a.removeBall(this);
+
 		layer = l;
+
+		if (a != null)
+			a.addBall(this);
 	}
 
 	/**
@@ -142,6 +162,8 @@ public class Ball
 	public void setColour(String c)
 	{
 		colour = c;
+		resolvedColour = GameArena.getColourFromString(c);
+		this.invalidate();
 	}
 
 	/**
@@ -152,8 +174,10 @@ public class Ball
 	 */
 	public void move(double dx, double dy)
 	{
+		Rectangle2D before = this.getBounds();
 		xPosition += dx;
 		yPosition += dy;
+		this.invalidate(before);
 	}
 
 	/**
@@ -164,10 +188,165 @@ public class Ball
 	 */
 	public boolean collides(Ball b)
 	{
-		double dx = b.xPosition - xPosition;
-		double dy = b.yPosition - yPosition;
-		double distance = Math.sqrt(dx*dx+dy*dy);
+		return Collision.circleCircle(xPosition, yPosition, size/2, b.xPosition, b.yPosition, b.size/2);
+	}
+
+	/**
+	 * Determines if this Ball is overlapping the given rectangle.
+	 * 
+	 * @param r the rectangle to test for collision
+	 * @return true of this ball is overlapping the rectangle r, false otherwise.
+	 */
+	public boolean collides(Rectangle r)
+	{
+		return Collision.circleRectangle(xPosition, yPosition, size/2, r.getXPosition(), r.getYPosition(), r.getWidth(), r.getHeight());
+	}
+
+	/**
+	 * Determines if this Ball is overlapping the given line.
+	 * 
+	 * @param l the line to test for collision
+	 * @return true of this ball is overlapping the line l, false otherwise.
+	 */
+	public boolean collides(Line l)
+	{
+		return Collision.circleSegment(xPosition, yPosition, size/2, l.getXStart(), l.getYStart(), l.getXEnd(), l.getYEnd(), l.getWidth()/2);
+	}
+
+	/**
+	 * Determines if this Ball is overlapping the given text.
+	 * 
+	 * @param t the text to test for collision
+	 * @return true of this ball is overlapping the text t, false otherwise.
+	 */
+	public boolean collides(Text t)
+	{
+		Rectangle2D r = t.getBounds();
+		return Collision.circleRectangle(xPosition, yPosition, size/2, r.getX(), r.getY(), r.getWidth(), r.getHeight());
+	}
+
+	/**
+	 * Determines if this Ball would hit the given ball if it moved by the given amount, and if so, when.
+	 * Unlike moving the Ball and then testing for a collision, this cannot miss a collision when the Ball is moving very quickly.
+	 * 
+	 * @param dx the distance this Ball will move on the x axis (in pixels)
+	 * @param dy the distance this Ball will move on the y axis (in pixels)
+	 * @param b the ball to test for collision
+	 * @return the fraction of the movement (between 0 and 1) this Ball can make before it touches the ball b, or -1 if it does not touch it.
+	 */
+	public double sweep(double dx, double dy, Ball b)
+	{
+		return Collision.sweepCircleCircle(xPosition, yPosition, size/2, dx, dy, b.xPosition, b.yPosition, b.size/2);
+	}
+
+	/**
+	 * Determines if this Ball would hit the given rectangle if it moved by the given amount, and if so, when.
+	 * Unlike moving the Ball and then testing for a collision, this cannot miss a collision when the Ball is moving very quickly.
+	 * 
+	 * @param dx the distance this Ball will move on the x axis (in pixels)
+	 * @param dy the distance this Ball will move on the y axis (in pixels)
+	 * @param r the rectangle to test for collision
+	 * @return the fraction of the movement (between 0 and 1) this Ball can make before it touches the rectangle r, or -1 if it does not touch it.
+	 */
+	public double sweep(double dx, double dy, Rectangle r)
+	{
+		return Collision.sweepCircleRectangle(xPosition, yPosition, size/2, dx, dy, r.getXPosition(), r.getYPosition(), r.getWidth(), r.getHeight());
+	}
+
+	/**
+	 * Determines if this Ball would hit the given line if it moved by the given amount, and if so, when.
+	 * Unlike moving the Ball and then testing for a collision, this cannot miss a collision when the Ball is moving very quickly.
+	 * 
+	 * @param dx the distance this Ball will move on the x axis (in pixels)
+	 * @param dy the distance this Ball will move on the y axis (in pixels)
+	 * @param l the line to test for collision
+	 * @return the fraction of the movement (between 0 and 1) this Ball can make before it touches the line l, or -1 if it does not touch it.
+	 */
+	public double sweep(double dx, double dy, Line l)
+	{
+		return Collision.sweepCircleSegment(xPosition, yPosition, size/2, dx, dy, l.getXStart(), l.getYStart(), l.getXEnd(), l.getYEnd(), l.getWidth()/2);
+	}
+
+	/**
+	 * Draws this Ball onto the given graphics context.
+	 * This is called by the GameArena every time the screen is redrawn - <p><B>YOU DO NOT (AND SHOULD NOT) NEED TO CALL THIS METHOD.</b></p>
+	 *
+	 * @param graphics the graphics context to draw onto.
+	 */
+	public void render(Graphics2D graphics)
+	{
+		graphics.setColor(resolvedColour);
+		graphics.fillOval((int)(xPosition - size/2), (int)(yPosition - size/2), (int)size, (int)size);
+	}
+
+	/**
+	 * Determines the area of the screen covered by this Ball.
+	 * @return the smallest rectangle enclosing this Ball, in pixels.
+	 */
+	public Rectangle2D getBounds()
+	{
+		return new Rectangle2D.Double(xPosition - size/2, yPosition - size/2, size, size);
+	}
+
+	/**
+	 * Determines if any part of this Ball lies within the given area. This is used to skip drawing objects that are not on the screen.
+	 *
+	 * @param x the x co-ordinate of the top left corner of the area.
+	 * @param y the y co-ordinate of the top left corner of the area.
+	 * @param w the width of the area.
+	 * @param h the height of the area.
+	 * @return true if the bounds of this Ball overlap the given area, false otherwise.
+	 */
+	public boolean intersects(double x, double y, double w, double h)
+	{
+		double r = size/2;
+		return xPosition + r > x && xPosition - r < x + w && yPosition + r > y && yPosition - r < y + h;
+	}
+
+	/**
+	 * Tells this Ball which GameArena it has been added to, so that it can let the GameArena know when it changes.
+	 * This is called by the GameArena when the Ball is added or removed - <p><B>YOU DO NOT (AND SHOULD NOT) NEED TO CALL THIS METHOD.</b></p>
+	 *
+	 * @param arena the GameArena this Ball has been added to, or null if it has been removed.
+	 */
+	public void setGameArena(GameArena arena)
+	{
+		this.arena = arena;
+	}
+
+	/**
+	 * Determines which GameArena this Ball has been added to.
+	 * @return the GameArena this Ball was last added to, or null if it is not in one.
+	 */
+	public GameArena getGameArena()
+	{
+		return arena;
+	}
+
+	/**
+	 * Lets the GameArena showing this Ball know that the area it covers needs to be redrawn.
+	 * Called after a change that does not move this Ball, such as a change of colour.
+	 */
+	private void invalidate()
+	{
+		GameArena a = arena;
+
+		if (a != null)
+			a.invalidate(this);
+	}
+
+	/**
+	 * Lets the GameArena showing this Ball know that it has moved or changed shape, so that both the area it
+	 * used to cover and the area it covers now are redrawn. Called once, after the change has been made, so that
+	 * the old area can never be redrawn while this Ball still appears to be there.
+	 *
+	 * @param before the area this Ball covered before the change.
+	 */
+	private void invalidate(Rectangle2D before)
+	{
+		GameArena a = arena;
 
-		return distance < size/2 + b.size/2;
+		if (a != null)
+			a.invalidate(this, before.createUnion(this.getBounds()));
 	}
 }
@@ -0,0 +1,18 @@
+/**
+ * The file formats a GameArena can record its frames in.
+ *
+ * @see GameArena#startCapture
+ */
+public enum CaptureFormat
+{
+	/**
+	 * One PNG image per frame. The filename given must contain a number format such as %05d, which is replaced by the frame number
+	 * (e.g. "frames/frame%05d.png" gives frames/frame00000.png, frames/frame00001.png and so on).
+	 */
+	PNG_SEQUENCE,
+
+	/**
+	 * A single uncompressed YUV4MPEG2 (.y4m) video file, which can be played or converted by most video tools (e.g. ffmpeg).
+	 */
+	Y4M
+}
@@ -0,0 +1,468 @@
+import java.awt.geom.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+import java.util.stream.*;
+
+/**
+ * Geometry used to detect collisions between objects in a GameArena.
+ *
+ * Balls are treated as circles, Rectangles and Text as axis aligned rectangles, and Lines as
+ * segments thickened by half their width on each side (their arrowheads are ignored).
+ * Circle tests compare squared distances, so no square roots are needed.
+ * Objects that are only just touching are not considered to be colliding.
+ */
+class Collision
+{
+	/**
+	 * Determines if two objects in a GameArena are colliding, using the most accurate test available for their types.
+	 * Objects of other types are colliding if their bounds overlap.
+	 *
+	 * @param a the first object.
+	 * @param b the second object.
+	 * @return true if the objects are colliding, false otherwise.
+	 */
+	public static boolean collides(Drawable a, Drawable b)
+	{
+		if (a instanceof Ball)
+		{
+			Ball ball = (Ball) a;
+
+			if (b instanceof Ball)
+				return ball.collides((Ball) b);
+			if (b instanceof Rectangle)
+				return ball.collides((Rectangle) b);
+			if (b instanceof Line)
+				return ball.collides((Line) b);
+			if (b instanceof Text)
+				return ball.collides((Text) b);
+		}
+
+		if (a instanceof Rectangle)
+		{
+			Rectangle rectangle = (Rectangle) a;
+
+			if (b instanceof Ball)
+				return rectangle.collides((Ball) b);
+			if (b instanceof Rectangle)
+				return rectangle.collides((Rectangle) b);
+			if (b instanceof Line)
+				return rectangle.collides((Line) b);
+			if (b instanceof Text)
+				return rectangle.collides((Text) b);
+		}
+
+		if (a instanceof Line)
+		{
+			Line line = (Line) a;
+
+			if (b instanceof Ball)
+				return line.collides((Ball) b);
+			if (b instanceof Rectangle)
+				return line.collides((Rectangle) b);
+			if (b instanceof Line)
+				return line.collides((Line) b);
+			if (b instanceof Text)
+				return line.collides((Text) b);
+		}
+
+		if (a instanceof Text)
+		{
+			Text text = (Text) a;
+
+			if (b instanceof Ball)
+				return text.collides((Ball) b);
+			if (b instanceof Rectangle)
+				return text.collides((Rectangle) b);
+			if (b instanceof Line)
+				return text.collides((Line) b);
+			if (b instanceof Text)
+				return text.collides((Text) b);
+		}
+
+		Rectangle2D r = a.getBounds();
+		return b.intersects(r.getX(), r.getY(), r.getWidth(), r.getHeight());
+	}
+
+	/**
+	 * Finds every pair of colliding objects in the given array, using all the threads of the given pool.
+	 *
+	 * The objects are sorted by their left edge, so each object need only be compared with the objects that follow it
+	 * until one starts beyond its right edge (sweep and prune). The sorted list is divided between the threads, and
+	 * the colliding pairs each thread finds are merged and sorted before they are reported, so the results are always
+	 * the same, however many threads are used.
+	 *
+	 * @param objects the objects to check.
+	 * @param pool the threads to use.
+	 * @param action called for every colliding pair, on the calling thread. Pairs are reported in the order of the
+	 * array: by the position of the first object in the pair, then by the position of the second.
+	 */
+	public static void findAll(Drawable[] objects, ForkJoinPool pool, BiConsumer<Drawable, Drawable> action)
+	{
+		int n = objects.length;
+		double[] minX = new double[n];
+		double[] maxX = new double[n];
+		double[] minY = new double[n];
+		double[] maxY = new double[n];
+
+		for (int i=0; i<n; i++)
+		{
+			Rectangle2D r = objects[i].getBounds();
+			minX[i] = r.getMinX();
+			maxX[i] = r.getMaxX();
+			minY[i] = r.getMinY();
+			maxY[i] = r.getMaxY();
+		}
+
+		Integer[] order = new Integer[n];
+		for (int i=0; i<n; i++)
+			order[i] = i;
+
+		Arrays.parallelSort(order, (a, b) -> Double.compare(minX[a], minX[b]));
+
+		// Divide the work into more pieces than threads, as some parts of the world are more crowded than others.
+		int pieces = Math.max(1, Math.min(n, pool.getParallelism() * 8));
+
+		long[][] found;
+		try
+		{
+			found = pool.submit(() -> IntStream.range(0, pieces).parallel().mapToObj(p -> {
+				long[] pairs = new long[16];
+				int count = 0;
+
+				for (int s = (int) ((long) n * p / pieces); s < (int) ((long) n * (p+1) / pieces); s++)
+				{
+					int a = order[s];
+
+					for (int t = s+1; t < n && minX[order[t]] < maxX[a]; t++)
+					{
+						int b = order[t];
+
+						if (minY[b] < maxY[a] && minY[a] < maxY[b] && collides(objects[a], objects[b]))
+						{
+							if (count == pairs.length)
+								pairs = Arrays.copyOf(pairs, count * 2);
+
+							pairs[count++] = ((long) Math.min(a, b) << 32) | Math.max(a, b);
+						}
+					}
+				}
+
+				return Arrays.copyOf(pairs, count);
+			}).toArray(long[][]::new)).get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return;
+		}
+		catch (ExecutionException e)
+		{
+			throw new RuntimeException(e.getCause());
+		}
+
+		int total = 0;
+		for (long[] pairs : found)
+			total += pairs.length;
+
+		long[] all = new long[total];
+		int k = 0;
+		for (long[] pairs : found)
+		{
+			System.arraycopy(pairs, 0, all, k, pairs.length);
+			k += pairs.length;
+		}
+
+		Arrays.parallelSort(all);
+
+		for (long pair : all)
+			action.accept(objects[(int) (pair >>> 32)], objects[(int) pair]);
+	}
+
+	/**
+	 * Determines if two circles overlap.
+	 */
+	public static boolean circleCircle(double x1, double y1, double r1, double x2, double y2, double r2)
+	{
+		double dx = x2 - x1;
+		double dy = y2 - y1;
+		double r = r1 + r2;
+
+		return dx*dx + dy*dy < r*r;
+	}
+
+	/**
+	 * Determines if a circle overlaps a rectangle.
+	 */
+	public static boolean circleRectangle(double cx, double cy, double r, double x, double y, double w, double h)
+	{
+		double dx = cx - clamp(cx, x, x + w);
+		double dy = cy - clamp(cy, y, y + h);
+
+		return dx*dx + dy*dy < r*r;
+	}
+
+	/**
+	 * Determines if a circle overlaps a thick line segment.
+	 */
+	public static boolean circleSegment(double cx, double cy, double r, double x1, double y1, double x2, double y2, double halfWidth)
+	{
+		double d = r + halfWidth;
+		return pointSegmentDistanceSquared(cx, cy, x1, y1, x2, y2) < d*d;
+	}
+
+	/**
+	 * Determines if two rectangles overlap.
+	 */
+	public static boolean rectangleRectangle(double x1, double y1, double w1, double h1, double x2, double y2, double w2, double h2)
+	{
+		return (x1 + w1 > x2 && x1 < x2 + w2) && (y1 + h1 > y2 && y1 < y2 + h2);
+	}
+
+	/**
+	 * Determines if a rectangle overlaps a thick line segment.
+	 */
+	public static boolean rectangleSegment(double x, double y, double w, double h, double x1, double y1, double x2, double y2, double halfWidth)
+	{
+		// Either end of the segment inside the rectangle?
+		if ((x1 > x && x1 < x + w && y1 > y && y1 < y + h) || (x2 > x && x2 < x + w && y2 > y && y2 < y + h))
+			return true;
+
+		// The segment crossing any edge of the rectangle?
+		if (segmentsCross(x1, y1, x2, y2, x, y, x + w, y) || segmentsCross(x1, y1, x2, y2, x + w, y, x + w, y + h) ||
+			segmentsCross(x1, y1, x2, y2, x + w, y + h, x, y + h) || segmentsCross(x1, y1, x2, y2, x, y + h, x, y))
+			return true;
+
+		if (halfWidth <= 0)
+			return false;
+
+		// Otherwise, the segment is outside the rectangle. Its thickness reaches the rectangle if the gap between them is small enough.
+		double d = halfWidth * halfWidth;
+
+		return pointSegmentDistanceSquared(x, y, x1, y1, x2, y2) < d ||
+			pointSegmentDistanceSquared(x + w, y, x1, y1, x2, y2) < d ||
+			pointSegmentDistanceSquared(x, y + h, x1, y1, x2, y2) < d ||
+			pointSegmentDistanceSquared(x + w, y + h, x1, y1, x2, y2) < d ||
+			circleRectangle(x1, y1, halfWidth, x, y, w, h) ||
+			circleRectangle(x2, y2, halfWidth, x, y, w, h);
+	}
+
+	/**
+	 * Determines if two thick line segments overlap.
+	 */
+	public static boolean segmentSegment(double ax1, double ay1, double ax2, double ay2, double halfWidthA, double bx1, double by1, double bx2, double by2, double halfWidthB)
+	{
+		if (segmentsCross(ax1, ay1, ax2, ay2, bx1, by1, bx2, by2))
+			return true;
+
+		double d = halfWidthA + halfWidthB;
+		d = d*d;
+
+		return pointSegmentDistanceSquared(ax1, ay1, bx1, by1, bx2, by2) < d ||
+			pointSegmentDistanceSquared(ax2, ay2, bx1, by1, bx2, by2) < d ||
+			pointSegmentDistanceSquared(bx1, by1, ax1, ay1, ax2, ay2) < d ||
+			pointSegmentDistanceSquared(bx2, by2, ax1, ay1, ax2, ay2) < d;
+	}
+
+	/**
+	 * Finds when a moving circle first touches a stationary circle.
+	 *
+	 * @return the fraction of the movement (dx,dy) completed at the moment of contact, between 0 and 1, or -1 if they do not touch.
+	 */
+	public static double sweepCircleCircle(double cx, double cy, double r, double dx, double dy, double x, double y, double radius)
+	{
+		double R = r + radius;
+		double mx = cx - x;
+		double my = cy - y;
+		double c = mx*mx + my*my - R*R;
+
+		if (c < 0)
+			return 0;
+
+		double a = dx*dx + dy*dy;
+		double b = 2 * (mx*dx + my*dy);
+
+		if (a == 0 || b >= 0)
+			return -1;
+
+		double discriminant = b*b - 4*a*c;
+
+		if (discriminant < 0)
+			return -1;
+
+		double t = (-b - Math.sqrt(discriminant)) / (2*a);
+
+		return t <= 1 ? t : -1;
+	}
+
+	/**
+	 * Finds when a moving circle first touches a stationary rectangle.
+	 *
+	 * @return the fraction of the movement (dx,dy) completed at the moment of contact, between 0 and 1, or -1 if they do not touch.
+	 */
+	public static double sweepCircleRectangle(double cx, double cy, double r, double dx, double dy, double x, double y, double w, double h)
+	{
+		if (circleRectangle(cx, cy, r, x, y, w, h))
+			return 0;
+
+		// The circle touches the rectangle when its centre reaches the rectangle grown by r, with rounded corners.
+		// That shape is made of two rectangles (grown horizontally and vertically) and four circles at the corners.
+		double t = earliest(rayRectangle(cx, cy, dx, dy, x - r, y, w + 2*r, h), rayRectangle(cx, cy, dx, dy, x, y - r, w, h + 2*r));
+		t = earliest(t, sweepCircleCircle(cx, cy, 0, dx, dy, x, y, r));
+		t = earliest(t, sweepCircleCircle(cx, cy, 0, dx, dy, x + w, y, r));
+		t = earliest(t, sweepCircleCircle(cx, cy, 0, dx, dy, x, y + h, r));
+		t = earliest(t, sweepCircleCircle(cx, cy, 0, dx, dy, x + w, y + h, r));
+
+		return t;
+	}
+
+	/**
+	 * Finds when a moving circle first touches a stationary thick line segment.
+	 *
+	 * @return the fraction of the movement (dx,dy) completed at the moment of contact, between 0 and 1, or -1 if they do not touch.
+	 */
+	public static double sweepCircleSegment(double cx, double cy, double r, double dx, double dy, double x1, double y1, double x2, double y2, double halfWidth)
+	{
+		if (circleSegment(cx, cy, r, x1, y1, x2, y2, halfWidth))
+			return 0;
+
+		// The circle touches the segment when its centre reaches the segment grown by R - a capsule made of
+		// two circles at the ends, joined by two sides parallel to the segment.
+		double R = r + halfWidth;
+		double t = earliest(sweepCircleCircle(cx, cy, 0, dx, dy, x1, y1, R), sweepCircleCircle(cx, cy, 0, dx, dy, x2, y2, R));
+
+		double lx = x2 - x1;
+		double ly = y2 - y1;
+		double length = Math.sqrt(lx*lx + ly*ly);
+
+		if (length > 0)
+		{
+			double nx = -ly / length * R;
+			double ny = lx / length * R;
+
+			t = earliest(t, raySegment(cx, cy, dx, dy, x1 + nx, y1 + ny, x2 + nx, y2 + ny));
+			t = earliest(t, raySegment(cx, cy, dx, dy, x1 - nx, y1 - ny, x2 - nx, y2 - ny));
+		}
+
+		return t;
+	}
+
+	/**
+	 * Finds when a point moving by (dx,dy) first enters a rectangle.
+	 * @return the fraction of the movement completed, between 0 and 1, or -1 if it does not enter the rectangle.
+	 */
+	private static double rayRectangle(double px, double py, double dx, double dy, double x, double y, double w, double h)
+	{
+		double tMin = 0;
+		double tMax = 1;
+
+		if (dx == 0)
+		{
+			if (px <= x || px >= x + w)
+				return -1;
+		}
+		else
+		{
+			double t1 = (x - px) / dx;
+			double t2 = (x + w - px) / dx;
+			tMin = Math.max(tMin, Math.min(t1, t2));
+			tMax = Math.min(tMax, Math.max(t1, t2));
+		}
+
+		if (dy == 0)
+		{
+			if (py <= y || py >= y + h)
+				return -1;
+		}
+		else
+		{
+			double t1 = (y - py) / dy;
+			double t2 = (y + h - py) / dy;
+			tMin = Math.max(tMin, Math.min(t1, t2));
+			tMax = Math.min(tMax, Math.max(t1, t2));
+		}
+
+		return tMin < tMax ? tMin : -1;
+	}
+
+	/**
+	 * Finds when a point moving by (dx,dy) first crosses a line segment.
+	 * @return the fraction of the movement completed, between 0 and 1, or -1 if it does not cross the segment.
+	 */
+	private static double raySegment(double px, double py, double dx, double dy, double x1, double y1, double x2, double y2)
+	{
+		double sx = x2 - x1;
+		double sy = y2 - y1;
+		double denominator = dx*sy - dy*sx;
+
+		if (denominator == 0)
+			return -1;
+
+		double t = ((x1 - px)*sy - (y1 - py)*sx) / denominator;
+		double u = ((x1 - px)*dy - (y1 - py)*dx) / denominator;
+
+		return (t >= 0 && t <= 1 && u >= 0 && u <= 1) ? t : -1;
+	}
+
+	/**
+	 * Determines if two line segments cross or touch.
+	 */
+	private static boolean segmentsCross(double ax1, double ay1, double ax2, double ay2, double bx1, double by1, double bx2, double by2)
+	{
+		double d1 = cross(bx1, by1, bx2, by2, ax1, ay1);
+		double d2 = cross(bx1, by1, bx2, by2, ax2, ay2);
+		double d3 = cross(ax1, ay1, ax2, ay2, bx1, by1);
+		double d4 = cross(ax1, ay1, ax2, ay2, bx2, by2);
+
+		if (((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0)) && ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0)))
+			return true;
+
+		return (d1 == 0 && onSegment(bx1, by1, bx2, by2, ax1, ay1)) || (d2 == 0 && onSegment(bx1, by1, bx2, by2, ax2, ay2)) ||
+			(d3 == 0 && onSegment(ax1, ay1, ax2, ay2, bx1, by1)) || (d4 == 0 && onSegment(ax1, ay1, ax2, ay2, bx2, by2));
+	}
+
+	private static double cross(double x1, double y1, double x2, double y2, double px, double py)
+	{
+		return (x2 - x1) * (py - y1) - (y2 - y1) * (px - x1);
+	}
+
+	private static boolean onSegment(double x1, double y1, double x2, double y2, double px, double py)
+	{
+		return px >= Math.min(x1, x2) && px <= Math.max(x1, x2) && py >= Math.min(y1, y2) && py <= Math.max(y1, y2);
+	}
+
+	/**
+	 * Determines the squared distance from a point to a line segment.
+	 */
+	private static double pointSegmentDistanceSquared(double px, double py, double x1, double y1, double x2, double y2)
+	{
+		double sx = x2 - x1;
+		double sy = y2 - y1;
+		double lengthSquared = sx*sx + sy*sy;
+		double t = lengthSquared == 0 ? 0 : clamp(((px - x1)*sx + (py - y1)*sy) / lengthSquared, 0, 1);
+
+		double dx = px - (x1 + t*sx);
+		double dy = py - (y1 + t*sy);
+
+		return dx*dx + dy*dy;
+	}
+
+	private static double clamp(double v, double min, double max)
+	{
+		return v < min ? min : (v > max ? max : v);
+	}
+
+	/**
+	 * Chooses the earlier of two contact times, where -1 means no contact.
+	 */
+	private static double earliest(double t1, double t2)
+	{
+		if (t1 < 0)
+			return t2;
+
+		if (t2 < 0)
+			return t1;
+
+		return Math.min(t1, t2);
+	}
+}
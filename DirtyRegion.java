@@ -0,0 +1,125 @@
+import java.awt.geom.*;
+import java.util.*;
+
+/**
+ * Records the areas of a GameArena that have changed since it was last drawn, so that only
+ * those areas need to be redrawn.
+ *
+ * Areas are merged together into a small number of rectangles when the GameArena is drawn.
+ * If too many areas have changed for this to be worthwhile, the whole GameArena is redrawn instead.
+ */
+class DirtyRegion
+{
+	// The number of pixels added around each changed area, to allow for antialiasing and rounding.
+	final static int padding = 2;
+
+	// The most separate areas we will track before giving up and redrawing everything.
+	private final static int maximumAreas = 64;
+
+	// If the changed areas cover more than this proportion of the GameArena, everything is redrawn.
+	private final static double maximumCoverage = 0.5;
+
+	private ArrayList<Rectangle2D> areas = new ArrayList<>();
+	private boolean everything = true;
+
+	/**
+	 * Records that the given area has changed.
+	 *
+	 * @param r the area that has changed.
+	 */
+	public synchronized void add(Rectangle2D r)
+	{
+		if (everything || r == null || r.isEmpty())
+			return;
+
+		if (areas.size() >= maximumAreas)
+		{
+			this.addAll();
+			return;
+		}
+
+		areas.add(new Rectangle2D.Double(r.getX() - padding, r.getY() - padding, r.getWidth() + padding * 2, r.getHeight() + padding * 2));
+	}
+
+	/**
+	 * Records that everything has changed.
+	 */
+	public synchronized void addAll()
+	{
+		everything = true;
+		areas.clear();
+	}
+
+	/**
+	 * Collects the areas that have changed since this method was last called, and resets this region.
+	 *
+	 * @param width the width of the GameArena, in pixels.
+	 * @param height the height of the GameArena, in pixels.
+	 * @return a list of non-overlapping rectangles covering every changed area, or null if everything should be redrawn.
+	 */
+	public List<Rectangle2D> take(int width, int height)
+	{
+		ArrayList<Rectangle2D> changed;
+
+		synchronized (this)
+		{
+			if (everything)
+			{
+				everything = false;
+				return null;
+			}
+
+			changed = areas;
+			areas = new ArrayList<>();
+		}
+
+		Rectangle2D arena = new Rectangle2D.Double(0, 0, width, height);
+
+		for (int i=changed.size()-1; i>=0; i--)
+		{
+			Rectangle2D r = changed.get(i);
+			Rectangle2D.intersect(r, arena, r);
+
+			if (r.isEmpty())
+				changed.remove(i);
+		}
+
+		// Repeatedly merge any two rectangles that overlap, or that would cost little more to draw as one.
+		boolean merged = true;
+		while (merged)
+		{
+			merged = false;
+
+			for (int i=0; i<changed.size() && !merged; i++)
+			{
+				for (int j=i+1; j<changed.size() && !merged; j++)
+				{
+					Rectangle2D a = changed.get(i);
+					Rectangle2D b = changed.get(j);
+					Rectangle2D u = a.createUnion(b);
+
+					if (a.intersects(b) || area(u) <= area(a) + area(b))
+					{
+						changed.set(i, u);
+						changed.remove(j);
+						merged = true;
+					}
+				}
+			}
+		}
+
+		double total = 0;
+		for (Rectangle2D r : changed)
+			total += area(r);
+
+		if (total > width * (double) height * maximumCoverage)
+			return null;
+
+		return changed;
+	}
+
+	private static double area(Rectangle2D r)
+	{
+		return r.getWidth() * r.getHeight();
+	}
+}
@@ -0,0 +1,308 @@
+import java.util.*;
+
+/**
+ * The list of objects drawn by a GameArena, kept in z buffering order.
+ *
+ * Objects are held in one bucket per layer, with the buckets sorted by layer number.
+ * Adding an object is therefore O(log L) (where L is the number of distinct layers in use),
+ * rather than requiring a walk of every object already in the arena. Objects within the same
+ * layer are drawn in the order in which they were added.
+ *
+ * Every object is indexed by identity to the slot it occupies, so removal is constant time:
+ * the slot is simply emptied, and a bucket is only compacted once at least half of it is empty.
+ *
+ * A DrawList is not thread safe. Threads that need to draw the list while another thread changes it
+ * should instead draw a Snapshot, which never changes once it has been taken. Snapshots hold each layer
+ * as fixed size chunks, and only chunks that have changed since the last snapshot are copied, so taking a
+ * snapshot after a few changes is cheap however many objects there are.
+ */
+class DrawList implements Iterable<Drawable>
+{
+	// Buckets are not compacted until they have at least this many empty slots.
+	private final static int minimumCompaction = 32;
+
+	// The number of slots held in each chunk of a snapshot.
+	private final static int chunkSize = 1024;
+
+	private TreeMap<Integer, Bucket> layers = new TreeMap<>();
+	private IdentityHashMap<Drawable, Slot> slots = new IdentityHashMap<>();
+	private Snapshot snapshot = null;
+	private long nextSequence = 0;
+
+	/**
+	 * An unchanging copy of the objects in a DrawList at a moment in time.
+	 */
+	static class Snapshot
+	{
+		final int[] layers;				// The layer numbers in use, lowest first
+		final Drawable[][][] items;		// The objects on each of those layers, in drawing order, in chunks. Empty slots are null.
+		final int size;					// The total number of objects
+
+		private Snapshot(int[] layers, Drawable[][][] items, int size)
+		{
+			this.layers = layers;
+			this.items = items;
+			this.size = size;
+		}
+	}
+
+	/**
+	 * The objects drawn on a single layer. Removed objects leave an empty (null) slot behind.
+	 */
+	private static class Bucket
+	{
+		private int layer;
+		private Drawable[] items = new Drawable[16];
+		private int used = 0;
+		private int holes = 0;
+		private Drawable[][] chunks = new Drawable[0][];	// The chunks in the last snapshot
+		private BitSet changed = new BitSet();				// The chunks that have changed since then
+
+		private Bucket(int layer)
+		{
+			this.layer = layer;
+		}
+	}
+
+	/**
+	 * Records where in the draw list an object is held.
+	 */
+	private static class Slot
+	{
+		private Bucket bucket;
+		private int index;
+		private long sequence;		// Increases with every object added, so orders the objects within a bucket
+
+		private Slot(Bucket bucket, int index, long sequence)
+		{
+			this.bucket = bucket;
+			this.index = index;
+			this.sequence = sequence;
+		}
+	}
+
+	/**
+	 * Adds an object to the end of the given layer. An object can only be held once;
+	 * adding an object that is already in this list has no effect.
+	 *
+	 * @param o the object to add.
+	 * @param layer the layer the object is to be drawn on.
+	 * @return true if the object was added, false if it was already present.
+	 */
+	public boolean add(Drawable o, int layer)
+	{
+		if (slots.containsKey(o))
+			return false;
+
+		Bucket bucket = layers.get(layer);
+
+		if (bucket == null)
+		{
+			bucket = new Bucket(layer);
+			layers.put(layer, bucket);
+		}
+
+		if (bucket.used == bucket.items.length)
+			bucket.items = Arrays.copyOf(bucket.items, bucket.items.length * 2);
+
+		bucket.items[bucket.used] = o;
+		bucket.changed.set(bucket.used / chunkSize);
+		slots.put(o, new Slot(bucket, bucket.used, nextSequence++));
+		bucket.used++;
+		snapshot = null;
+
+		return true;
+	}
+
+	/**
+	 * Determines which layer an object is held on. This is the layer it was added to, even if the object
+	 * has since changed its own layer, so it is always safe to use when removing the object.
+	 *
+	 * @param o the object to look for.
+	 * @return the layer the object is held on, or null if it is not in this list.
+	 */
+	public Integer getLayerOf(Drawable o)
+	{
+		Slot s = slots.get(o);
+		return s == null ? null : s.bucket.layer;
+	}
+
+	/**
+	 * Determines the order in which an object is drawn relative to the other objects on the same layer.
+	 *
+	 * @param o the object to look for.
+	 * @return a number that is larger for objects drawn later, or -1 if the object is not in this list.
+	 */
+	public long getSequenceOf(Drawable o)
+	{
+		Slot s = slots.get(o);
+		return s == null ? -1 : s.sequence;
+	}
+
+	/**
+	 * Removes an object from this list, in constant time. Objects are found by identity,
+	 * so this works whatever layer the object now reports.
+	 *
+	 * @param o the object to remove.
+	 * @return true if the object was found and removed, false otherwise.
+	 */
+	public boolean remove(Drawable o)
+	{
+		Slot s = slots.remove(o);
+
+		if (s == null)
+			return false;
+
+		Bucket bucket = s.bucket;
+		bucket.items[s.index] = null;
+		bucket.changed.set(s.index / chunkSize);
+		bucket.holes++;
+		snapshot = null;
+
+		if (bucket.holes == bucket.used)
+			layers.remove(bucket.layer);
+
+		else if (bucket.holes >= minimumCompaction && bucket.holes * 2 >= bucket.used)
+			compact(bucket);
+
+		return true;
+	}
+
+	/**
+	 * Closes up the empty slots in the given bucket, preserving the order of the remaining objects.
+	 */
+	private void compact(Bucket bucket)
+	{
+		int n = 0;
+
+		for (int i=0; i<bucket.used; i++)
+		{
+			Drawable o = bucket.items[i];
+
+			if (o != null)
+			{
+				bucket.items[n] = o;
+				slots.get(o).index = n;
+				n++;
+			}
+		}
+
+		Arrays.fill(bucket.items, n, bucket.used, null);
+		bucket.changed.set(0, (bucket.used + chunkSize - 1) / chunkSize);
+		bucket.used = n;
+		bucket.holes = 0;
+	}
+
+	/**
+	 * Removes every object from this list.
+	 */
+	public void clear()
+	{
+		layers.clear();
+		slots.clear();
+		snapshot = null;
+	}
+
+	/**
+	 * Takes a copy of the objects currently in this list. Only the chunks of the list changed since the last call
+	 * are copied; the rest are shared with the previous snapshot. Calling this when nothing has changed is very cheap.
+	 *
+	 * @return a Snapshot of this list, which will not change even if the list does.
+	 */
+	public Snapshot snapshot()
+	{
+		if (snapshot == null)
+		{
+			int[] layerNumbers = new int[layers.size()];
+			Drawable[][][] items = new Drawable[layers.size()][][];
+			int l = 0;
+
+			for (Bucket bucket : layers.values())
+			{
+				if (!bucket.changed.isEmpty())
+				{
+					int count = (bucket.used + chunkSize - 1) / chunkSize;
+
+					// The previous snapshot may still be in use, so never change its arrays: start from a copy.
+					Drawable[][] chunks = Arrays.copyOf(bucket.chunks, count);
+
+					for (int c = bucket.changed.nextSetBit(0); c >= 0 && c < count; c = bucket.changed.nextSetBit(c + 1))
+						chunks[c] = Arrays.copyOfRange(bucket.items, c * chunkSize, Math.min((c + 1) * chunkSize, bucket.used));
+
+					bucket.chunks = chunks;
+					bucket.changed.clear();
+				}
+
+				layerNumbers[l] = bucket.layer;
+				items[l] = bucket.chunks;
+				l++;
+			}
+
+			snapshot = new Snapshot(layerNumbers, items, slots.size());
+		}
+
+		return snapshot;
+	}
+
+	/**
+	 * Determines the number of objects in this list.
+	 * @return the number of objects in this list.
+	 */
+	public int size()
+	{
+		return slots.size();
+	}
+
+	/**
+	 * Iterates over every object in this list, lowest layer first.
+	 * @return an Iterator over the objects in drawing order.
+	 */
+	public Iterator<Drawable> iterator()
+	{
+		return new DrawListIterator(layers.values().iterator());
+	}
+
+	/**
+	 * Iterates over the objects in a sequence of buckets, skipping any empty slots.
+	 */
+	private static class DrawListIterator implements Iterator<Drawable>
+	{
+		private Iterator<Bucket> buckets;
+		private Bucket current = null;
+		private int index = 0;
+
+		private DrawListIterator(Iterator<Bucket> buckets)
+		{
+			this.buckets = buckets;
+		}
+
+		public boolean hasNext()
+		{
+			while (true)
+			{
+				if (current != null)
+				{
+					while (index < current.used && current.items[index] == null)
+						index++;
+
+					if (index < current.used)
+						return true;
+				}
+
+				if (!buckets.hasNext())
+					return false;
+
+				current = buckets.next();
+				index = 0;
+			}
+		}
+
+		public Drawable next()
+		{
+			if (!hasNext())
+				throw new NoSuchElementException();
+
+			return current.items[index++];
+		}
+	}
+}
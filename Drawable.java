@@ -0,0 +1,56 @@
+import java.awt.*;
+import java.awt.geom.*;
+
+/**
+ * Describes any object that can be drawn by a GameArena.
+ * Ball, Rectangle, Line and Text all implement this interface.
+ */
+public interface Drawable
+{
+	/**
+	 * Obtains the layer of this object.
+	 * Objects with a higher layer number are always drawn on top of those with lower layer numbers.
+	 * @return the layer of this object.
+	 */
+	public int getLayer();
+
+	/**
+	 * Draws this object onto the given graphics context.
+	 * This is called by the GameArena every time the screen is redrawn - <p><B>YOU DO NOT (AND SHOULD NOT) NEED TO CALL THIS METHOD.</b></p>
+	 *
+	 * @param graphics the graphics context to draw onto.
+	 */
+	public void render(Graphics2D graphics);
+
+	/**
+	 * Determines the area of the screen covered by this object.
+	 * @return the smallest rectangle enclosing everything this object draws, in pixels.
+	 */
+	public Rectangle2D getBounds();
+
+	/**
+	 * Determines if any part of this object lies within the given area. This is used to skip drawing objects that are not on the screen,
+	 * so should be quick to calculate and should not create any new objects.
+	 *
+	 * @param x the x co-ordinate of the top left corner of the area.
+	 * @param y the y co-ordinate of the top left corner of the area.
+	 * @param w the width of the area.
+	 * @param h the height of the area.
+	 * @return true if the bounds of this object overlap the given area, false otherwise.
+	 */
+	public boolean intersects(double x, double y, double w, double h);
+
+	/**
+	 * Tells this object which GameArena it has been added to, so that it can let the GameArena know when it changes.
+	 * This is called by the GameArena when the object is added or removed - <p><B>YOU DO NOT (AND SHOULD NOT) NEED TO CALL THIS METHOD.</b></p>
+	 *
+	 * @param arena the GameArena this object has been added to, or null if it has been removed.
+	 */
+	public void setGameArena(GameArena arena);
+
+	/**
+	 * Determines which GameArena this object has been added to.
+	 * @return the GameArena this object was last added to, or null if it is not in one.
+	 */
+	public GameArena getGameArena();
+}
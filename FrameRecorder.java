@@ -0,0 +1,273 @@
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import javax.imageio.*;
+
+/**
+ * Writes frames drawn by a GameArena to disk, on a background thread, so that recording never holds up drawing.
+ *
+ * Frames are copied into a small, fixed set of images that are reused over and over. If the disk cannot keep up and
+ * every image is still waiting to be written, new frames are dropped rather than making the game wait.
+ */
+class FrameRecorder implements Runnable
+{
+	// The number of frames that can be waiting to be written at once.
+	private final static int queueLength = 8;
+
+	private final static byte[] frameHeader = {'F', 'R', 'A', 'M', 'E', '\n'};
+
+	private final CaptureFormat format;
+	private final String filename;
+	private final int width;
+	private final int height;
+
+	private final ArrayBlockingQueue<BufferedImage> free = new ArrayBlockingQueue<>(queueLength);
+	private final ArrayBlockingQueue<BufferedImage> waiting = new ArrayBlockingQueue<>(queueLength);
+	private final AtomicLong captured = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private volatile boolean stopping = false;
+	private volatile boolean finished = false;		// Set once the background thread will write no more frames
+	private volatile Exception error = null;
+	private final Thread thread;
+
+	// Used only by the background thread, when writing video.
+	private OutputStream video;
+	private byte[] luma;
+	private byte[] blueChroma;
+	private byte[] redChroma;
+
+	/**
+	 * Starts recording. For video, the file is created straight away.
+	 *
+	 * @param filename the file to write to. For PNG_SEQUENCE, a format string containing the frame number (e.g. "frame%05d.png").
+	 * @param format the file format to write.
+	 * @param width the width of each frame, in pixels.
+	 * @param height the height of each frame, in pixels.
+	 * @param frameRate the number of frames per second, recorded in video files.
+	 * @throws IOException if the video file cannot be created.
+	 */
+	public FrameRecorder(String filename, CaptureFormat format, int width, int height, int frameRate) throws IOException
+	{
+		this.filename = filename;
+		this.format = format;
+		this.width = Math.max(width, 1);
+		this.height = Math.max(height, 1);
+
+		for (int i=0; i<queueLength; i++)
+			free.add(new BufferedImage(this.width, this.height, BufferedImage.TYPE_INT_RGB));
+
+		if (format == CaptureFormat.Y4M)
+		{
+			video = new BufferedOutputStream(new FileOutputStream(filename), 1 << 20);
+			video.write(("YUV4MPEG2 W" + this.width + " H" + this.height + " F" + frameRate + ":1 Ip A1:1 C420jpeg\n").getBytes("US-ASCII"));
+
+			luma = new byte[this.width * this.height];
+			blueChroma = new byte[((this.width + 1) / 2) * ((this.height + 1) / 2)];
+			redChroma = new byte[blueChroma.length];
+		}
+
+		thread = new Thread(this, "GameArena frame recorder");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Obtains an image to draw the next frame into, if one is free. Must be followed by a call to submit.
+	 * @return an image the size of the recording, or null if the frame should be dropped.
+	 */
+	public BufferedImage acquire()
+	{
+		if (stopping || finished)
+			return null;
+
+		BufferedImage frame = free.poll();
+
+		if (frame == null)
+			dropped.incrementAndGet();
+
+		return frame;
+	}
+
+	/**
+	 * Queues a frame obtained from acquire to be written. The frame is counted as captured once it has been written.
+	 * @param frame the frame to write.
+	 */
+	public void submit(BufferedImage frame)
+	{
+		waiting.add(frame);
+	}
+
+	/**
+	 * Copies an image, and queues the copy to be written. Returns straight away.
+	 *
+	 * @param image the image to record.
+	 * @return true if the frame was queued, false if it was dropped because too many frames are waiting to be written.
+	 */
+	public boolean offer(Image image)
+	{
+		BufferedImage frame = this.acquire();
+
+		if (frame == null)
+			return false;
+
+		// Images in the same format as ours can be copied directly, without going through Graphics2D.
+		if (image instanceof BufferedImage && ((BufferedImage) image).getType() == BufferedImage.TYPE_INT_RGB && ((BufferedImage) image).getWidth() == width && ((BufferedImage) image).getHeight() == height)
+		{
+			int[] from = ((DataBufferInt) ((BufferedImage) image).getRaster().getDataBuffer()).getData();
+			int[] to = ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
+			System.arraycopy(from, 0, to, 0, to.length);
+		}
+		else
+		{
+			Graphics2D g = frame.createGraphics();
+			g.setComposite(AlphaComposite.Src);
+			g.drawImage(image, 0, 0, null);
+			g.dispose();
+		}
+
+		this.submit(frame);
+		return true;
+	}
+
+	/**
+	 * Stops recording, waiting for every queued frame to be written and the file to be closed.
+	 * @throws IOException if any frame could not be written.
+	 */
+	public void stop() throws IOException
+	{
+		stopping = true;
+		thread.interrupt();
+
+		try { thread.join(); }
+		catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+
+		Exception e = error;
+
+		if (e instanceof IOException)
+			throw (IOException) e;
+
+		if (e != null)
+			throw new IOException("Could not record frame: " + e, e);
+	}
+
+	/**
+	 * Determines how many frames have been written so far.
+	 * @return the number of frames written.
+	 */
+	public long getCaptured()
+	{
+		return captured.get();
+	}
+
+	/**
+	 * Determines how many frames were skipped because too many frames were waiting to be written.
+	 * @return the number of frames dropped.
+	 */
+	public long getDropped()
+	{
+		return dropped.get();
+	}
+
+	/**
+	 * Writes frames as they arrive, until recording is stopped and every waiting frame has been written.
+	 */
+	public void run()
+	{
+		long frameNumber = 0;
+
+		try
+		{
+			while (true)
+			{
+				BufferedImage frame;
+
+				try { frame = stopping ? waiting.poll() : waiting.take(); }
+				catch (InterruptedException e) { continue; }
+
+				if (frame == null)
+					break;
+
+				if (format == CaptureFormat.PNG_SEQUENCE)
+				{
+					// ImageIO reports some failures by returning false rather than throwing.
+					if (!ImageIO.write(frame, "png", new File(String.format(filename, frameNumber))))
+						throw new IOException("No PNG writer available");
+				}
+				else
+				{
+					this.writeVideoFrame(frame);
+				}
+
+				frameNumber++;
+				captured.incrementAndGet();
+				free.add(frame);
+			}
+		}
+		catch (IOException | RuntimeException e)
+		{
+			// Any failure ends the recording: nothing after a missing frame would be worth keeping.
+			error = e;
+		}
+		finally
+		{
+			finished = true;
+
+			if (video != null)
+			{
+				try { video.close(); }
+				catch (IOException e) { if (error == null) error = e; }
+			}
+		}
+	}
+
+	/**
+	 * Converts a frame to YUV 4:2:0 (BT.601, studio range) and appends it to the video file.
+	 */
+	private void writeVideoFrame(BufferedImage frame) throws IOException
+	{
+		int[] pixels = ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
+		int chromaWidth = (width + 1) / 2;
+
+		for (int i=0; i<pixels.length; i++)
+		{
+			int p = pixels[i];
+			int r = (p >> 16) & 0xff;
+			int g = (p >> 8) & 0xff;
+			int b = p & 0xff;
+
+			luma[i] = (byte) (((66 * r + 129 * g + 25 * b + 128) >> 8) + 16);
+		}
+
+		// Each chroma sample is the average of a 2x2 block of pixels.
+		for (int cy=0; cy<(height + 1) / 2; cy++)
+		{
+			int y0 = cy * 2;
+			int y1 = Math.min(y0 + 1, height - 1);
+
+			for (int cx=0; cx<chromaWidth; cx++)
+			{
+				int x0 = cx * 2;
+				int x1 = Math.min(x0 + 1, width - 1);
+
+				int p0 = pixels[y0 * width + x0];
+				int p1 = pixels[y0 * width + x1];
+				int p2 = pixels[y1 * width + x0];
+				int p3 = pixels[y1 * width + x1];
+
+				int r = (((p0 >> 16) & 0xff) + ((p1 >> 16) & 0xff) + ((p2 >> 16) & 0xff) + ((p3 >> 16) & 0xff)) >> 2;
+				int g = (((p0 >> 8) & 0xff) + ((p1 >> 8) & 0xff) + ((p2 >> 8) & 0xff) + ((p3 >> 8) & 0xff)) >> 2;
+				int b = ((p0 & 0xff) + (p1 & 0xff) + (p2 & 0xff) + (p3 & 0xff)) >> 2;
+
+				blueChroma[cy * chromaWidth + cx] = (byte) (((-38 * r - 74 * g + 112 * b + 128) >> 8) + 128);
+				redChroma[cy * chromaWidth + cx] = (byte) (((112 * r - 94 * g - 18 * b + 128) >> 8) + 128);
+			}
+		}
+
+		video.write(frameHeader);
+		video.write(luma);
+		video.write(blueChroma);
+		video.write(redChroma);
+	}
+}
@@ -4,14 +4,24 @@ import java.awt.geom.*;
 import java.awt.image.*;
 import java.awt.event.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+import java.util.function.*;
+import java.util.stream.*;
+import java.io.*;
+import javax.imageio.*;
 import java.lang.Class;
 import java.lang.reflect.*;
 
 /**
  * This class provides a simple window in which grahical objects can be drawn.
+ *
+ * If there is no display (for example when run with -Djava.awt.headless=true), no window is created and no game loop is started.
+ * Pictures of the GameArena can still be drawn whenever they are needed using renderFrame(), and the game advanced using step().
  * @author Joe Finney
  */
-public class GameArena extends JPanel implements Runnable, KeyListener, MouseListener, MouseMotionListener
+public class GameArena extends JPanel implements Runnable, KeyListener, MouseListener, MouseMotionListener, MouseWheelListener
 {
 	// Size of playarea
 	private JFrame frame;
@@ -19,32 +29,159 @@ public class GameArena extends JPanel implements Runnable, KeyListener, MouseLis
 	private int arenaHeight;
 
 	private boolean exiting = false;
+	private boolean headless = false;
+
+	private DrawList things = new DrawList();
+	private volatile int objectLimit = 0;
+
+	// The draw list is only ever changed while holding sceneLock. The renderer never takes the lock to draw:
+	// instead it draws the most recently published snapshot of the draw list.
+	private final ReentrantLock sceneLock = new ReentrantLock();
+	private volatile DrawList.Snapshot scene = things.snapshot();
+	private final LongAdder lockContentions = new LongAdder();
+	private final LongAdder lockWaitTime = new LongAdder();
+
+	// The parts of the screen affected by adding or removing objects since the scene was last published.
+	// These are only redrawn once the renderer can see the change, so that they are never redrawn from an out of date scene.
+	// Objects added or removed since then are remembered too, as they may move before the change is published: where they are
+	// at that point is only known when publishing. A removed object keeps its link to this GameArena until then, so that the
+	// renderer (which may still be drawing it) hears about it moving.
+	private ArrayList<Rectangle2D> changedAreas = new ArrayList<>();
+	private HashSet<Integer> changedLayers = new HashSet<>();
+	private Set<Drawable> changedObjects = Collections.newSetFromMap(new IdentityHashMap<>());
+	private volatile int changedObjectCount = 0;
+	private boolean changedEverything = false;
+
+	// When the dirty areas of a frame would together need more than this many objects checked, they are drawn as one area instead.
+	private final static long maximumChecksPerFrame = 2000000;
+
+	// Once there are this many objects, the renderer finds those on the screen using a grid rather than checking every object.
+	// The grid holds the objects in the published scene, and is only changed along with it (while holding both sceneLock
+	// and the grid's own lock), so the renderer can tell whether the grid matches the scene it is drawing.
+	private final static int renderIndexThreshold = 4096;
+	private final static double renderCellSize = 128;
+	private volatile SpatialHash renderIndex = null;
+	private boolean renderIndexStale = false;
+
+	// Objects that have moved since the grid was last brought up to date. The game thread only records moves here, and never
+	// waits for the grid: the renderer applies them before each search, and publishing applies them before changing the grid.
+	private final Set<Drawable> movedObjects = ConcurrentHashMap.newKeySet();
+
+	private static Map<String, Color> colours = new ConcurrentHashMap<>();
+
+	static
+	{
+		// Add standard colours.
+		colours.put("BLACK", Color.BLACK);
+		colours.put("BLUE", Color.BLUE);
+		colours.put("CYAN", Color.CYAN);
+		colours.put("DARKGREY", Color.DARK_GRAY);
+		colours.put("GREY", Color.GRAY);
+		colours.put("GREEN", Color.GREEN);
+		colours.put("LIGHTGREY", Color.LIGHT_GRAY);
+		colours.put("MAGENTA", Color.MAGENTA);
+		colours.put("ORANGE", Color.ORANGE);
+		colours.put("PINK", Color.PINK);
+		colours.put("RED", Color.RED);
+		colours.put("WHITE", Color.WHITE);
+		colours.put("YELLOW", Color.YELLOW);
+	}
 
-	private ArrayList<Object> things = new ArrayList<Object>();
-
-	private HashMap<String, Color> colours = new HashMap<>();
-
-	private boolean up = false;
-	private boolean down = false;
-	private boolean left = false;
-	private boolean right = false;
-	private boolean shift = false;
-	private boolean space = false;
-	private boolean esc = false;
-	private boolean enter = false;
-	private boolean[] alphasPressed = new boolean[26];
-	private final static int asciiAZOffset = 65;
-	private final static int alphabetLength = 25;
-	private boolean leftMouse = false;
-	private boolean rightMouse = false;
-	private int mouseX = 0;
-	private int mouseY = 0;
-
-	private BufferedImage buffer;
+	// Input state is written by the event dispatch thread and read by the game, so must be thread safe.
+	private final InputState input = new InputState();
+	private volatile long mousePosition = 0;		// The x and y co-ordinates of the mouse, packed together so that they are always read as a pair
+
+	private final InputQueue inputQueue = new InputQueue(1024);
+
+	// Game loop timing, in nanoseconds
+	private final static long spinPeriod = 1000000;
+	private final static long pausePeriod = 20000000;
+	private final static int maximumUpdatesPerFrame = 10;
+	private volatile long framePeriod = 10000000;
+	private volatile long updatePeriod = 1000000000L / 60;
+	private volatile GameLoopListener gameLoopListener = null;
+	private volatile double interpolation = 0;
+	private long[] frameTimes = new long[120];
+	private int frameCount = 0;
+	private long pauseDeadline = 0;
+
+	private Canvas canvas = null;
+	private BufferStrategy strategy = null;
+
+	private VolatileImage buffer;
+	private boolean bufferValid = false;
+	private DirtyRegion dirty = new DirtyRegion();
+	private Map<Integer, LayerCache> staticLayers = new ConcurrentHashMap<>();
+	private double cameraX = 0;
+	private double cameraY = 0;
+	private double cameraZoom = 1;
+	private double cameraRotation = 0;
+	private volatile AffineTransform camera = new AffineTransform();
+	private volatile AffineTransform inverseCamera = new AffineTransform();
+	private volatile SpatialHash spatialIndex = null;
+	private double spatialCellSize = 64;
+	private ForkJoinPool collisionPool = ForkJoinPool.commonPool();
+	private int drawnCount = 0;
+	private int culledCount = 0;
+	private volatile int objectsDrawn = 0;
+	private volatile int objectsCulled = 0;
+
+	/**
+	 * An image holding everything drawn on a static layer.
+	 */
+	private static class LayerCache
+	{
+		private BufferedImage image = null;
+		private volatile boolean valid = false;
+		private AffineTransform camera = null;		// The camera the image was drawn through
+	}
 	private Graphics2D graphics;
-	private Map<RenderingHints.Key, Object> renderingHints;
+	private volatile Map<RenderingHints.Key, Object> renderingHints;
+	private volatile boolean renderingHintsChanged = false;
+	private RenderQuality renderQuality;
 	private boolean rendered = false;
-	private Image backgroundImage = null;
+	private BufferedImage backgroundImage = null;
+	private BufferedImage scaledBackground = null;
+	private BufferedImage frameImage = null;
+	private volatile FrameRecorder recorder = null;
+
+	// renderFrame() splits the picture into horizontal bands, and draws them in parallel using renderPool.
+	// Each thread gets a few bands, so that work is shared out evenly, but no band is shorter than this many pixels.
+	private final static int minimumTileHeight = 16;
+	private final static int tilesPerThread = 4;
+	private ForkJoinPool renderPool = ForkJoinPool.commonPool();
+
+	/**
+	 * The objects that overlap one tile of the screen, in drawing order.
+	 */
+	private static class Tile
+	{
+		private int x, y, width, height;
+		private Drawable[] items = new Drawable[16];
+		private int[] layers = new int[16];			// The index of the layer each object is on
+		private int count = 0;
+
+		private Tile(int x, int y, int width, int height)
+		{
+			this.x = x;
+			this.y = y;
+			this.width = width;
+			this.height = height;
+		}
+
+		private void add(Drawable d, int layer)
+		{
+			if (count == items.length)
+			{
+				items = Arrays.copyOf(items, count * 2);
+				layers = Arrays.copyOf(layers, count * 2);
+			}
+
+			items[count] = d;
+			layers[count] = layer;
+			count++;
+		}
+	}
 
 	/**
 	 * Create a view of a GameArena.
@@ -54,7 +191,7 @@ public class GameArena extends JPanel implements Runnable, KeyListener, MouseLis
 	 */
 	public GameArena(int width, int height)
 	{
-		this.init(width, height, true);
+		this.init(width, height, true, false);
 	}
 
 	/**
@@ -66,14 +203,53 @@ public class GameArena extends JPanel implements Runnable, KeyListener, MouseLis
 	 */
 	public GameArena(int width, int height, boolean createWindow)
 	{
-		this.init(width, height, createWindow);
+		this.init(width, height, createWindow, false);
+	}
+
+	/**
+	 * Create a view of a GameArena.
+	 *
+	 * @param width The width of the playing area, in pixels.
+	 * @param height The height of the playing area, in pixels.
+	 * @param createWindow Defines if a window should be created to host this GameArena. @see getPanel.
+	 * @param activeRendering Defines if the GameArena should draw itself directly to the screen from its own thread,
+	 * using page flipping, rather than waiting for Swing to ask it to repaint. This reduces the delay before changes appear on the screen.
+	 */
+	public GameArena(int width, int height, boolean createWindow, boolean activeRendering)
+	{
+		this.init(width, height, createWindow, activeRendering);
 	}
 
 	/**
 	 * Internal initialisation method - called by constructor methods.
 	 */
-	private void init(int width, int height, boolean createWindow)
+	private void init(int width, int height, boolean createWindow, boolean activeRendering)
 	{
+		// Setup graphics rendering hints for quality
+		this.setRenderQuality(RenderQuality.QUALITY);
+
+		// Without a display there is nothing to show a window on, and nothing to keep redrawing.
+		if (GraphicsEnvironment.isHeadless())
+		{
+			headless = true;
+			this.setSize(width, height);
+			return;
+		}
+
+		if (activeRendering)
+		{
+			// Draw onto a heavyweight Canvas covering this panel, which we page flip ourselves.
+			canvas = new Canvas();
+			canvas.setIgnoreRepaint(true);
+			canvas.addMouseListener(this);
+			canvas.addMouseMotionListener(this);
+			canvas.addMouseWheelListener(this);
+			canvas.addKeyListener(this);
+
+			this.setLayout(new BorderLayout());
+			this.add(canvas, BorderLayout.CENTER);
+		}
+
 		if (createWindow)
 		{
 			this.frame = new JFrame();
@@ -88,56 +264,76 @@ public class GameArena extends JPanel implements Runnable, KeyListener, MouseLis
 
 		this.setSize(width, height);
 
-		// Add standard colours.
-		colours.put("BLACK", Color.BLACK);
-		colours.put("BLUE", Color.BLUE);
-		colours.put("CYAN", Color.CYAN);
-		colours.put("DARKGREY", Color.DARK_GRAY);
-		colours.put("GREY", Color.GRAY);
-		colours.put("GREEN", Color.GREEN);
-		colours.put("LIGHTGREY", Color.LIGHT_GRAY);
-		colours.put("MAGENTA", Color.MAGENTA);
-		colours.put("ORANGE", Color.ORANGE);
-		colours.put("PINK", Color.PINK);
-		colours.put("RED", Color.RED);
-		colours.put("WHITE", Color.WHITE);
-		colours.put("YELLOW", Color.YELLOW);
-
-		// Setup graphics rendering hints for quality
-		renderingHints = new HashMap<>();
-		renderingHints.put(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
-		renderingHints.put(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-		renderingHints.put(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_QUALITY);
-		renderingHints.put(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_ENABLE);
-		renderingHints.put(RenderingHints.KEY_FRACTIONALMETRICS,RenderingHints.VALUE_FRACTIONALMETRICS_ON);
-		renderingHints.put(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-		renderingHints.put(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-		renderingHints.put(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
-		renderingHints.put(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_LCD_HRGB);
-
-		try {
-			Class rh = Class.forName("java.awt.RenderingHints");
-			RenderingHints.Key key = (RenderingHints.Key) rh.getField("KEY_RESOLUTION_VARIANT").get(null);
-			Object value = rh.getField("VALUE_RESOLUTION_VARIANT_DPI_FIT").get(null);
-			renderingHints.put(key, value);
-		}
-		catch (Exception e){}
-
 		Thread t = new Thread(this);
 		t.start();
 
 		this.addMouseListener(this);
 		this.addMouseMotionListener(this);
+		this.addMouseWheelListener(this);
 
 		if (frame != null)
 			frame.addKeyListener(this);
 	}
 
-	public void run() {
+	/**
+	 * The game loop of this GameArena - <p><B>YOU DO NOT (AND SHOULD NOT) NEED TO CALL THIS METHOD.</b></p>
+	 *
+	 * Redraws the screen at the target frame rate, and delivers fixed rate updates to any GameLoopListener in between.
+	 */
+	public void run()
+	{
+		long previous = System.nanoTime();
+		long nextFrame = previous;
+		long accumulator = 0;
+
 		try {
 			while (!exiting) {
-				this.repaint();
-				Thread.sleep(10);
+				long now = System.nanoTime();
+				long elapsed = now - previous;
+				previous = now;
+
+				this.recordFrameTime(elapsed);
+
+				GameLoopListener listener = gameLoopListener;
+				if (listener != null)
+				{
+					// Run as many fixed size updates as are needed to catch up with real time.
+					// If we fall a long way behind, drop the backlog rather than trying to catch up forever.
+					long step = updatePeriod;
+					accumulator += elapsed;
+
+					if (accumulator > step * maximumUpdatesPerFrame)
+						accumulator = step * maximumUpdatesPerFrame;
+
+					while (accumulator >= step)
+					{
+						input.latch();
+						listener.update(step / 1000000000.0);
+						accumulator -= step;
+					}
+
+					interpolation = (double) accumulator / step;
+					listener.interpolate(interpolation);
+				}
+				else
+				{
+					accumulator = 0;
+				}
+
+				// Pick up any objects added or removed since the last frame, unless the game is busy changing them right now.
+				this.publishScene(false);
+
+				if (canvas != null)
+					this.renderActive();
+				else
+					this.repaint();
+
+				// Schedule the next frame from when this one was due, so that timing errors don't accumulate.
+				nextFrame += framePeriod;
+				if (System.nanoTime() - nextFrame > framePeriod)
+					nextFrame = System.nanoTime();
+
+				waitUntil(nextFrame);
 			}
 		} catch (InterruptedException iex) {}
 
@@ -145,6 +341,159 @@ public class GameArena extends JPanel implements Runnable, KeyListener, MouseLis
 			frame.dispatchEvent(new WindowEvent(frame, WindowEvent.WINDOW_CLOSING));
 	}
 
+	/**
+	 * Internal method to wait until the given time. Sleeps until about a millisecond before the deadline,
+	 * then yields until it arrives, as sleeping alone is not accurate enough for smooth animation.
+	 *
+	 * @param deadline the time to wait until, as given by System.nanoTime().
+	 */
+	private static void waitUntil(long deadline) throws InterruptedException
+	{
+		long remaining = deadline - System.nanoTime();
+
+		if (remaining > spinPeriod)
+		{
+			long sleep = remaining - spinPeriod;
+			Thread.sleep(sleep / 1000000, (int) (sleep % 1000000));
+		}
+
+		while (deadline - System.nanoTime() > 0)
+			Thread.yield();
+	}
+
+	/**
+	 * Internal method to record the time taken by a frame in the frame time statistics.
+	 */
+	private void recordFrameTime(long time)
+	{
+		synchronized (frameTimes)
+		{
+			frameTimes[frameCount % frameTimes.length] = time;
+			frameCount++;
+		}
+	}
+
+	/**
+	 * Sets the number of times per second that the screen is redrawn.
+	 *
+	 * @param fps the target number of frames per second. The default is 100.
+	 */
+	public void setTargetFrameRate(int fps)
+	{
+		if (fps > 0)
+			framePeriod = 1000000000L / fps;
+	}
+
+	/**
+	 * Determines the number of times per second that the screen is intended to be redrawn.
+	 * @return the target number of frames per second.
+	 */
+	public int getTargetFrameRate()
+	{
+		return (int) Math.round(1000000000.0 / framePeriod);
+	}
+
+	/**
+	 * Sets the number of times per second that the update method of the GameLoopListener is called.
+	 *
+	 * @param hz the number of updates per second. The default is 60.
+	 */
+	public void setUpdateRate(int hz)
+	{
+		if (hz > 0)
+			updatePeriod = 1000000000L / hz;
+	}
+
+	/**
+	 * Determines the number of times per second that the update method of the GameLoopListener is called.
+	 * @return the number of updates per second.
+	 */
+	public int getUpdateRate()
+	{
+		return (int) Math.round(1000000000.0 / updatePeriod);
+	}
+
+	/**
+	 * Registers an object to receive fixed rate updates from the game loop of this GameArena.
+	 * Updates are delivered on the game loop thread, and frames are drawn in between them.
+	 *
+	 * @param listener the object to be updated, or null to stop updates.
+	 */
+	public void setGameLoopListener(GameLoopListener listener)
+	{
+		this.gameLoopListener = listener;
+	}
+
+	/**
+	 * Determines how far the game loop is between one fixed rate update and the next.
+	 * @return the fraction of an update period elapsed since the last update, between 0 and 1.
+	 */
+	public double getInterpolation()
+	{
+		return interpolation;
+	}
+
+	/**
+	 * Determines how long the most recent frame took.
+	 * @return the time between the two most recent frames, in milliseconds.
+	 */
+	public double getFrameTime()
+	{
+		synchronized (frameTimes)
+		{
+			if (frameCount == 0)
+				return 0;
+
+			return frameTimes[(frameCount - 1) % frameTimes.length] / 1000000.0;
+		}
+	}
+
+	/**
+	 * Determines the average time taken by recent frames.
+	 * @return the mean time between recent frames, in milliseconds.
+	 */
+	public double getAverageFrameTime()
+	{
+		synchronized (frameTimes)
+		{
+			int n = Math.min(frameCount, frameTimes.length);
+			long total = 0;
+
+			for (int i=0; i<n; i++)
+				total += frameTimes[i];
+
+			return n == 0 ? 0 : total / (n * 1000000.0);
+		}
+	}
+
+	/**
+	 * Determines the longest time taken by recent frames. Useful for spotting stutter.
+	 * @return the maximum time between recent frames, in milliseconds.
+	 */
+	public double getMaximumFrameTime()
+	{
+		synchronized (frameTimes)
+		{
+			int n = Math.min(frameCount, frameTimes.length);
+			long max = 0;
+
+			for (int i=0; i<n; i++)
+				max = Math.max(max, frameTimes[i]);
+
+			return max / 1000000.0;
+		}
+	}
+
+	/**
+	 * Determines the number of frames per second actually being achieved.
+	 * @return the mean frame rate over recent frames.
+	 */
+	public double getFrameRate()
+	{
+		double t = this.getAverageFrameTime();
+		return t == 0 ? 0 : 1000.0 / t;
+	}
+
 	/**
 	 * Update the size of the GameArena.
 	 *
@@ -157,6 +506,7 @@ public class GameArena extends JPanel implements Runnable, KeyListener, MouseLis
 		this.arenaHeight = height;
 
 		super.setSize(width,height);
+		this.updateCamera();
 
 		if (frame != null)
 			frame.setSize(arenaWidth + frame.getInsets().left + frame.getInsets().right, arenaHeight + frame.getInsets().top + frame.getInsets().bottom);
@@ -193,12 +543,141 @@ public class GameArena extends JPanel implements Runnable, KeyListener, MouseLis
 	 * Set the background of the GameArena window to the specified image file.
 	 * The image will be scaled to fit the size of the GameArena
 	 *
+	 * The image is loaded straight away, and scaled once rather than every time the screen is drawn.
+	 * If the file cannot be read, the GameArena is left without a background image.
+	 *
 	 * @param filename the filename of an image to use.
 	 */
 	public void setBackgroundImage(String filename)
 	{
-		Toolkit t=Toolkit.getDefaultToolkit();
-		backgroundImage = t.getImage(filename);
+		BufferedImage image = null;
+
+		try { image = ImageIO.read(new File(filename)); }
+		catch (IOException e) {}
+
+		synchronized (this)
+		{
+			backgroundImage = image;
+			scaledBackground = null;
+			this.redrawAll();
+		}
+	}
+
+	/**
+	 * Internal method to obtain the background image, scaled to the size of the GameArena.
+	 * The scaled image is created the first time it is needed, and again whenever the GameArena changes size.
+	 *
+	 * @return the scaled background image, or null if there is no background image.
+	 */
+	private synchronized BufferedImage getScaledBackground()
+	{
+		if (backgroundImage == null || arenaWidth <= 0 || arenaHeight <= 0)
+			return null;
+
+		if (scaledBackground == null || scaledBackground.getWidth() != arenaWidth || scaledBackground.getHeight() != arenaHeight)
+		{
+			GraphicsConfiguration gc = this.getGraphicsConfiguration();
+			int transparency = backgroundImage.getTransparency();
+
+			if (gc != null)
+				scaledBackground = gc.createCompatibleImage(arenaWidth, arenaHeight, transparency);
+			else
+				scaledBackground = new BufferedImage(arenaWidth, arenaHeight, transparency == Transparency.OPAQUE ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+
+			Graphics2D g = scaledBackground.createGraphics();
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+			g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			g.drawImage(backgroundImage, 0, 0, arenaWidth, arenaHeight, null);
+			g.dispose();
+		}
+
+		return scaledBackground;
+	}
+
+	/**
+	 * Selects how much effort is spent making the GameArena look good, at the expense of speed.
+	 * This can be changed at any time, and takes effect from the next frame drawn.
+	 *
+	 * @param quality the rendering quality profile to use. The default is RenderQuality.QUALITY.
+	 * To provide your own rendering hints, use setRenderingHints instead.
+	 * @throws IllegalArgumentException if quality is RenderQuality.CUSTOM, which is only ever reported by getRenderQuality after setRenderingHints has been used.
+	 */
+	public void setRenderQuality(RenderQuality quality)
+	{
+		Map<RenderingHints.Key, Object> hints = new HashMap<>();
+
+		if (quality == RenderQuality.SPEED)
+		{
+			hints.put(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_SPEED);
+			hints.put(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+			hints.put(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_SPEED);
+			hints.put(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_DISABLE);
+			hints.put(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_OFF);
+			hints.put(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+			hints.put(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+			hints.put(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_NORMALIZE);
+			hints.put(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+		}
+		else if (quality == RenderQuality.BALANCED)
+		{
+			hints.put(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			hints.put(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_DISABLE);
+			hints.put(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			hints.put(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_NORMALIZE);
+			hints.put(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		}
+		else if (quality == RenderQuality.QUALITY)
+		{
+			hints.put(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
+			hints.put(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			hints.put(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_QUALITY);
+			hints.put(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_ENABLE);
+			hints.put(RenderingHints.KEY_FRACTIONALMETRICS,RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+			hints.put(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			hints.put(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			hints.put(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+			hints.put(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_LCD_HRGB);
+
+			try {
+				Class rh = Class.forName("java.awt.RenderingHints");
+				RenderingHints.Key key = (RenderingHints.Key) rh.getField("KEY_RESOLUTION_VARIANT").get(null);
+				Object value = rh.getField("VALUE_RESOLUTION_VARIANT_DPI_FIT").get(null);
+				hints.put(key, value);
+			}
+			catch (Exception e){}
+		}
+		else
+		{
+			throw new IllegalArgumentException("RenderQuality." + quality + " cannot be selected - use setRenderingHints to provide custom rendering hints");
+		}
+
+		this.renderQuality = quality;
+		this.renderingHints = hints;
+		this.renderingHintsChanged = true;
+		this.redrawAll();
+	}
+
+	/**
+	 * Provides a custom set of rendering hints, for full control over how the GameArena is drawn.
+	 * This can be changed at any time, and takes effect from the next frame drawn.
+	 *
+	 * @param hints the java.awt.RenderingHints to use when drawing.
+	 */
+	public void setRenderingHints(Map<RenderingHints.Key, ?> hints)
+	{
+		this.renderQuality = RenderQuality.CUSTOM;
+		this.renderingHints = new HashMap<RenderingHints.Key, Object>(hints);
+		this.renderingHintsChanged = true;
+		this.redrawAll();
+	}
+
+	/**
+	 * Determines the rendering quality profile currently in use.
+	 * @return the current rendering quality profile.
+	 */
+	public RenderQuality getRenderQuality()
+	{
+		return renderQuality;
 	}
 
 	/**
@@ -229,19 +708,6 @@ public class GameArena extends JPanel implements Runnable, KeyListener, MouseLis
 	{
 		Graphics2D window = (Graphics2D) gr;
 
-		if (!rendered)
-		{
-			this.setSize(arenaWidth, arenaHeight);
-
-			// Create a buffer the same size of the window, which we can reuse from frame to frame to improve performance.
-			buffer = new BufferedImage(arenaWidth, arenaHeight, BufferedImage.TYPE_INT_ARGB);
-			graphics = buffer.createGraphics();
-			graphics.setRenderingHints(renderingHints);
-
-			// Remember that we've completed this initialisation, so that we don't do it again...
-			rendered = true;
-		}
-
 		if (frame == null)
 		{
 			// Find the JFrame we have been added to, and attach a KeyListner
@@ -251,84 +717,1197 @@ public class GameArena extends JPanel implements Runnable, KeyListener, MouseLis
 				frame.addKeyListener(this);
 		}
 
+		if (!rendered)
+		{
+			this.setSize(arenaWidth, arenaHeight);
+
+			// Remember that we've completed this initialisation, so that we don't do it again...
+			rendered = true;
+		}
+
+		// When rendering actively, the game loop draws directly onto the canvas instead.
+		if (canvas != null)
+			return;
+
 		window.setRenderingHints(renderingHints);
 
-		synchronized (this)
+		// Draw into a buffer in the same format as the screen (ideally held in video memory), which we reuse from frame to frame
+		// to improve performance. If the buffer's contents are lost while we are using it (e.g. the display mode changes), draw them again.
+		do
 		{
-			if (!this.exiting)
+			GraphicsConfiguration gc = this.getGraphicsConfiguration();
+
+			if (buffer == null || buffer.getWidth() != Math.max(arenaWidth, 1) || buffer.getHeight() != Math.max(arenaHeight, 1))
+				this.createBuffer(gc);
+
+			else
 			{
-				graphics.clearRect(0,0, arenaWidth, arenaHeight);
+				int status = buffer.validate(gc);
 
-				if (backgroundImage != null)
-					graphics.drawImage(backgroundImage, 0, 0, arenaWidth, arenaHeight, 0, 0, backgroundImage.getWidth(null), backgroundImage.getHeight(null), null);
+				if (status == VolatileImage.IMAGE_INCOMPATIBLE)
+					this.createBuffer(gc);
 
-				for (Object o : things)
+				else if (status == VolatileImage.IMAGE_RESTORED)
 				{
-					if (o instanceof Ball)
-					{
-						Ball b = (Ball) o;
-						graphics.setColor(this.getColourFromString(b.getColour()));
-						graphics.fillOval((int)(b.getXPosition() - b.getSize()/2), (int)(b.getYPosition() - b.getSize()/2), (int)b.getSize(), (int)b.getSize());
-					}
+					graphics.dispose();
+					this.createBufferGraphics();
+					bufferValid = false;
+				}
+			}
 
-					if (o instanceof Rectangle)
-					{
-						Rectangle r = (Rectangle) o;
-						graphics.setColor(this.getColourFromString(r.getColour()));
-						graphics.fillRect((int)r.getXPosition(), (int)r.getYPosition(), (int)r.getWidth(), (int)r.getHeight());
-					}
+			if (renderingHintsChanged)
+			{
+				renderingHintsChanged = false;
+				graphics.setRenderingHints(renderingHints);
+			}
 
-					if (o instanceof Line)
-					{
-						Line l = (Line) o;
-						graphics.setColor(this.getColourFromString(l.getColour()));
-						graphics.setStroke(new BasicStroke((float)l.getWidth()));
-
-						float sx = (float)l.getXStart();
-						float sy = (float)l.getYStart();
-						float ex = (float)l.getXEnd();
-						float ey = (float)l.getYEnd();
-
-						if (l.getArrowSize() > 0)
-						{
-							float arrowRatio = (float) (1.0 - ((l.getWidth() * l.getArrowSize()) / l.getLength()));
-							ex = sx + ((ex - sx) * arrowRatio);
-							ey = sy + ((ey - sy) * arrowRatio);
-							graphics.fillPolygon(l.getArrowX(), l.getArrowY(), 3);
-						}
-						graphics.draw(new Line2D.Float(sx,sy,ex,ey));
-					}
+			// Only redraw the areas that have changed since the last frame, unless the buffer no longer holds the last frame.
+			java.util.List<Rectangle2D> areas = dirty.take(arenaWidth, arenaHeight);
 
-					if (o instanceof Text)
+			this.renderScene(graphics, bufferValid ? areas : null);
+			bufferValid = true;
+
+			window.drawImage(buffer, this.getInsets().left, this.getInsets().top, this);
+
+			if (buffer.contentsLost())
+				bufferValid = false;
+		}
+		while (!bufferValid);
+
+		FrameRecorder rec = recorder;
+		if (rec != null)
+			rec.offer(buffer);
+	}
+
+	/**
+	 * Internal method to (re)create the back buffer at the current size of the GameArena.
+	 *
+	 * @param gc the graphics configuration of the screen the GameArena is displayed on.
+	 */
+	private void createBuffer(GraphicsConfiguration gc)
+	{
+		if (graphics != null)
+			graphics.dispose();
+
+		if (buffer != null)
+			buffer.flush();
+
+		if (gc != null)
+			buffer = gc.createCompatibleVolatileImage(Math.max(arenaWidth, 1), Math.max(arenaHeight, 1));
+		else
+			buffer = this.createVolatileImage(Math.max(arenaWidth, 1), Math.max(arenaHeight, 1));
+
+		this.createBufferGraphics();
+		bufferValid = false;
+	}
+
+	/**
+	 * Internal method to obtain a fresh graphics context for the back buffer.
+	 */
+	private void createBufferGraphics()
+	{
+		graphics = buffer.createGraphics();
+		graphics.setRenderingHints(renderingHints);
+		renderingHintsChanged = false;
+	}
+
+	/**
+	 * Internal method to draw one frame directly to the screen, when active rendering is in use.
+	 * Called from the game loop thread rather than by Swing.
+	 */
+	private void renderActive()
+	{
+		if (!canvas.isDisplayable() || canvas.getWidth() <= 0 || canvas.getHeight() <= 0)
+			return;
+
+		// Create the page flipping buffers the first time through. The BufferStrategy takes care of resizing them.
+		if (strategy == null)
+		{
+			canvas.createBufferStrategy(2);
+			strategy = canvas.getBufferStrategy();
+		}
+
+		Map<RenderingHints.Key, Object> hints = renderingHints;
+
+		// When recording, draw the frame into an image first; it is then both copied to the screen and saved.
+		FrameRecorder rec = recorder;
+		BufferedImage captured = rec == null ? null : rec.acquire();
+
+		if (captured != null)
+		{
+			Graphics2D g = captured.createGraphics();
+			g.setRenderingHints(hints);
+			this.renderScene(g, null);
+			g.dispose();
+		}
+
+		do
+		{
+			do
+			{
+				Graphics2D g = (Graphics2D) strategy.getDrawGraphics();
+
+				if (captured != null)
+				{
+					g.drawImage(captured, 0, 0, null);
+				}
+				else
+				{
+					g.setRenderingHints(hints);
+					this.renderScene(g, null);
+				}
+
+				g.dispose();
+			}
+			while (strategy.contentsRestored());
+
+			strategy.show();
+		}
+		while (strategy.contentsLost());
+
+		if (captured != null)
+			rec.submit(captured);
+
+		Toolkit.getDefaultToolkit().sync();
+	}
+
+	/**
+	 * Internal method to draw the background and every object in the drawlist onto the given graphics context.
+	 *
+	 * @param g the graphics context to draw onto.
+	 * @param areas the areas of the GameArena to redraw, or null to redraw everything.
+	 */
+	private void renderScene(Graphics2D g, java.util.List<Rectangle2D> areas)
+	{
+		// Draw the latest published scene. The game is free to change the draw list while we do so.
+		DrawList.Snapshot s = scene;
+
+		drawnCount = 0;
+		culledCount = 0;
+
+		if (!this.exiting)
+		{
+			if (areas == null)
+			{
+				this.renderArea(g, null, s);
+			}
+			else
+			{
+				// Without a grid, every separate area costs a pass over every object. With very many objects, one larger area is cheaper.
+				if (renderIndex == null && areas.size() > 1 && (long) areas.size() * s.size > maximumChecksPerFrame)
+				{
+					Rectangle2D union = areas.get(0);
+					for (Rectangle2D r : areas)
+						union = union.createUnion(r);
+
+					areas = java.util.List.of(union);
+				}
+
+				for (Rectangle2D r : areas)
+				{
+					// Work in whole pixels, so that the clip and the objects we choose to draw agree exactly.
+					int x = (int) Math.floor(r.getX());
+					int y = (int) Math.floor(r.getY());
+					int w = (int) Math.ceil(r.getMaxX()) - x;
+					int h = (int) Math.ceil(r.getMaxY()) - y;
+
+					g.setClip(x, y, w, h);
+					this.renderArea(g, new Rectangle2D.Double(x, y, w, h), s);
+				}
+
+				g.setClip(null);
+			}
+		}
+
+		objectsDrawn = drawnCount;
+		objectsCulled = culledCount;
+	}
+
+	/**
+	 * Determines how many objects were drawn in the most recent frame.
+	 * Objects on static layers are not counted unless their layer had to be redrawn.
+	 *
+	 * @return the number of objects drawn.
+	 */
+	public int getObjectsDrawn()
+	{
+		return objectsDrawn;
+	}
+
+	/**
+	 * Determines how many objects were skipped in the most recent frame, because they were not on the screen
+	 * (or, when only part of the screen was redrawn, not in the part being redrawn).
+	 *
+	 * @return the number of objects skipped.
+	 */
+	public int getObjectsCulled()
+	{
+		return objectsCulled;
+	}
+
+	/**
+	 * Draws everything in the GameArena into an image, straight away. This works whether or not the GameArena has a window,
+	 * and is the way to obtain pictures of a headless GameArena.
+	 *
+	 * The same image is reused by every call, so copy it if you need to keep it. This should only be called by one thread at a time.
+	 *
+	 * @return an image the size of the GameArena, showing everything in it.
+	 */
+	public BufferedImage renderFrame()
+	{
+		this.publishScene(true);
+
+		if (frameImage == null || frameImage.getWidth() != arenaWidth || frameImage.getHeight() != arenaHeight)
+			frameImage = new BufferedImage(Math.max(arenaWidth, 1), Math.max(arenaHeight, 1), BufferedImage.TYPE_INT_RGB);
+
+		ForkJoinPool pool = renderPool;
+
+		if (pool == null)
+		{
+			Graphics2D g = frameImage.createGraphics();
+			g.setRenderingHints(renderingHints);
+			this.renderScene(g, null);
+			g.dispose();
+		}
+		else
+		{
+			this.renderTiles(frameImage, scene, pool);
+		}
+
+		FrameRecorder rec = recorder;
+		if (rec != null)
+			rec.offer(frameImage);
+
+		return frameImage;
+	}
+
+	/**
+	 * Starts recording every frame drawn by this GameArena to disk, until stopCapture() is called. This includes frames
+	 * drawn on the screen and frames drawn by renderFrame().
+	 *
+	 * Frames are saved on a separate thread, so recording does not slow down the game. If frames are drawn faster than they
+	 * can be saved, some are skipped rather than making the game wait; getFramesDropped() reports how many.
+	 *
+	 * @param filename the file to save to. For CaptureFormat.PNG_SEQUENCE this must contain a number format for the frame number, such as "frame%05d.png".
+	 * @param format the file format to save in.
+	 * @return true if recording started, false if the file could not be created, or (for CaptureFormat.PNG_SEQUENCE) the file name does not contain a number format giving each frame its own file.
+	 */
+	public boolean startCapture(String filename, CaptureFormat format)
+	{
+		this.stopCapture();
+
+		// Check the file name gives every frame its own file, before any frames are drawn.
+		if (format == CaptureFormat.PNG_SEQUENCE)
+		{
+			try
+			{
+				if (String.format(filename, 0L).equals(String.format(filename, 1L)))
+					return false;
+			}
+			catch (IllegalFormatException e)
+			{
+				return false;
+			}
+		}
+
+		try
+		{
+			recorder = new FrameRecorder(filename, format, arenaWidth, arenaHeight, this.getTargetFrameRate());
+			return true;
+		}
+		catch (IOException e)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Stops recording, and waits for every frame recorded so far to be saved.
+	 *
+	 * @return true if every frame was saved successfully (or nothing was being recorded), false if any could not be written.
+	 */
+	public boolean stopCapture()
+	{
+		FrameRecorder rec = recorder;
+
+		if (rec == null)
+			return true;
+
+		// The recorder is kept, so that its frame counts can still be read. It ignores any further frames.
+		try
+		{
+			rec.stop();
+			return true;
+		}
+		catch (IOException e)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Determines how many frames have been saved since startCapture() was last called. Frames still waiting to be saved are not included.
+	 * @return the number of frames saved.
+	 */
+	public long getFramesCaptured()
+	{
+		FrameRecorder rec = recorder;
+		return rec == null ? 0 : rec.getCaptured();
+	}
+
+	/**
+	 * Determines how many frames have been skipped since startCapture() was last called, because they could not be saved quickly enough.
+	 * @return the number of frames skipped.
+	 */
+	public long getFramesDropped()
+	{
+		FrameRecorder rec = recorder;
+		return rec == null ? 0 : rec.getDropped();
+	}
+
+	/**
+	 * Sets how many threads renderFrame() uses to draw. By default, every processor core is used.
+	 * Windows are always drawn by a single thread.
+	 *
+	 * @param threads the number of threads to use. 1 draws the whole picture on the calling thread.
+	 */
+	public void setRenderThreads(int threads)
+	{
+		if (threads <= 0)
+			return;
+
+		ForkJoinPool old = renderPool;
+		renderPool = threads == 1 ? null : new ForkJoinPool(threads);
+
+		if (old != null && old != ForkJoinPool.commonPool())
+			old.shutdown();
+	}
+
+	/**
+	 * Internal method to draw a scene into an image, using several threads.
+	 *
+	 * The image is divided into tiles, and each object is listed against every tile it overlaps. Each tile is then drawn
+	 * separately, through a clipped view of the same image, so tiles can be drawn at the same time without interfering.
+	 * Within each tile, objects are drawn in the same order as they would be on the screen.
+	 *
+	 * @param target the image to draw into.
+	 * @param s the scene to draw.
+	 * @param pool the threads to use.
+	 */
+	private void renderTiles(BufferedImage target, DrawList.Snapshot s, ForkJoinPool pool)
+	{
+		int width = target.getWidth();
+		int height = target.getHeight();
+
+		// Tiles are full width bands: objects spanning several tiles (such as a ParticleSystem) are visited once per tile,
+		// so fewer, wider tiles keep that cost down.
+		int tileHeight = Math.max((height + pool.getParallelism() * tilesPerThread - 1) / (pool.getParallelism() * tilesPerThread), minimumTileHeight);
+		int rows = (height + tileHeight - 1) / tileHeight;
+
+		Tile[] tiles = new Tile[rows];
+		for (int r=0; r<rows; r++)
+			tiles[r] = new Tile(0, r * tileHeight, width, Math.min(tileHeight, height - r * tileHeight));
+
+		// Static layers are drawn once, here, then copied into each tile.
+		BufferedImage[] layerImages = new BufferedImage[s.layers.length];
+		int drawn = 0;
+		int culled = 0;
+
+		// Where possible, only visit the objects on the screen. Otherwise, check every object.
+		AffineTransform cam = camera;
+		Rectangle2D screen = new Rectangle2D.Double(0, 0, width, height);
+		Rectangle2D margin = new Rectangle2D.Double(-DirtyRegion.padding, -DirtyRegion.padding, width + DirtyRegion.padding * 2, height + DirtyRegion.padding * 2);
+		Tile visible = this.findVisible(s, screen, this.screenToWorld(margin, cam));
+		int next = 0;
+
+		for (int l=0; l<s.layers.length; l++)
+		{
+			LayerCache cache = staticLayers.get(s.layers[l]);
+
+			if (cache != null)
+			{
+				layerImages[l] = this.getLayerImage(s.items[l], cache);
+				continue;
+			}
+
+			if (visible != null)
+			{
+				while (next < visible.count && visible.layers[next] < l)
+					next++;
+
+				for (; next < visible.count && visible.layers[next] == l; next++)
+				{
+					if (this.addToTiles(tiles, tileHeight, width, height, visible.items[next], l))
+						drawn++;
+					else
+						culled++;
+				}
+
+				continue;
+			}
+
+			for (Drawable[] chunk : s.items[l])
+			{
+				for (Drawable d : chunk)
+				{
+					if (d == null)
+						continue;
+
+					if (this.addToTiles(tiles, tileHeight, width, height, d, l))
+						drawn++;
+					else
+						culled++;
+				}
+			}
+		}
+
+		if (visible != null)
+			culled += s.size - visible.count;
+
+		// Particles are drawn straight into the pixels of the image, each band drawing only the particles within it.
+		// Sorting the particles into bands first means no band has to look through every particle.
+		boolean direct = target.getType() == BufferedImage.TYPE_INT_RGB || target.getType() == BufferedImage.TYPE_INT_ARGB_PRE;
+		int[] pixels = direct ? ((DataBufferInt) target.getRaster().getDataBuffer()).getData() : null;
+		int stride = direct ? ((SinglePixelPackedSampleModel) target.getSampleModel()).getScanlineStride() : 0;
+		IdentityHashMap<Drawable, ParticleSystem.Bands> particles = new IdentityHashMap<>();
+
+		if (direct)
+		{
+			for (Tile t : tiles)
+				for (int j=0; j<t.count; j++)
+					if (t.items[j] instanceof ParticleSystem && !particles.containsKey(t.items[j]))
+						particles.put(t.items[j], ((ParticleSystem) t.items[j]).sortIntoBands(cam, width, tileHeight, rows));
+		}
+
+		BufferedImage background = this.getScaledBackground();
+		Map<RenderingHints.Key, Object> hints = renderingHints;
+
+		try
+		{
+			pool.submit(() -> IntStream.range(0, tiles.length).parallel().forEach(i -> {
+				Tile t = tiles[i];
+				Graphics2D g = target.getSubimage(t.x, t.y, t.width, t.height).createGraphics();
+				g.setRenderingHints(hints);
+				g.translate(-t.x, -t.y);
+				g.clipRect(t.x, t.y, t.width, t.height);
+
+				if (background == null || background.getTransparency() != Transparency.OPAQUE)
+					g.clearRect(t.x, t.y, t.width, t.height);
+
+				if (background != null)
+					g.drawImage(background, 0, 0, null);
+
+				Graphics2D world = (Graphics2D) g.create();
+				world.transform(cam);
+
+				int k = 0;
+				for (int l=0; l<layerImages.length; l++)
+				{
+					if (layerImages[l] != null)
+						g.drawImage(layerImages[l], 0, 0, null);
+
+					while (k < t.count && t.layers[k] == l)
 					{
-						Text t = (Text) o;
-						graphics.setFont(new Font("SansSerif", Font.BOLD, t.getSize()));
-						graphics.setColor(this.getColourFromString(t.getColour()));
-						graphics.drawString(t.getText(),(float)t.getXPosition(), (float)t.getYPosition());
+						Drawable d = t.items[k++];
+						ParticleSystem.Bands bands = particles.get(d);
+
+						if (bands != null)
+							((ParticleSystem) d).renderBand(bands, i, pixels, target.getType() == BufferedImage.TYPE_INT_RGB, stride, t.y, t.width, t.height);
+						else
+							d.render(world);
 					}
 				}
+
+				world.dispose();
+				g.dispose();
+			})).get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return;
+		}
+		catch (ExecutionException e)
+		{
+			throw new RuntimeException(e.getCause());
+		}
+
+		objectsDrawn = drawn;
+		objectsCulled = culled;
+	}
+
+	/**
+	 * Internal method to list an object against every tile it overlaps.
+	 *
+	 * @param tiles the tiles, as full width bands from the top of the image down.
+	 * @param tileHeight the height of each tile.
+	 * @param width the width of the image.
+	 * @param height the height of the image.
+	 * @param d the object.
+	 * @param layer the index of the layer the object is on.
+	 * @return true if the object was listed, or false if it is not on the screen.
+	 */
+	private boolean addToTiles(Tile[] tiles, int tileHeight, int width, int height, Drawable d, int layer)
+	{
+		// Antialiased edges can reach just outside an object's bounds, so allow the same margin as a dirty area does.
+		Rectangle2D b = this.worldToScreen(d.getBounds());
+		int padding = DirtyRegion.padding;
+
+		if (b.getMaxX() + padding < 0 || b.getMaxY() + padding < 0 || b.getMinX() - padding > width || b.getMinY() - padding > height)
+			return false;
+
+		int r0 = Math.max((int) Math.floor(b.getMinY() - padding) / tileHeight, 0);
+		int r1 = Math.min((int) Math.ceil(b.getMaxY() + padding) / tileHeight, tiles.length - 1);
+
+		for (int r=r0; r<=r1; r++)
+			tiles[r].add(d, layer);
+
+		return true;
+	}
+
+	/**
+	 * Draws everything in the GameArena, straight away, and provides the raw pixels.
+	 * The same array is reused by every call, so copy it if you need to keep it.
+	 *
+	 * @return the colour of every pixel in the GameArena as a packed 0xRRGGBB value, one row after another starting from the top left.
+	 */
+	public int[] renderFramePixels()
+	{
+		int[] pixels = ((DataBufferInt) this.renderFrame().getRaster().getDataBuffer()).getData();
+
+		// Java2D may fill in the unused top byte of each pixel. Clear it, so values can be compared with 0xRRGGBB colours.
+		for (int i=0; i<pixels.length; i++)
+			pixels[i] &= 0xffffff;
+
+		return pixels;
+	}
+
+	/**
+	 * Advances the game by a single update, as if the game loop had run once. A headless GameArena has no game loop,
+	 * so games using a GameLoopListener should call this instead, as often as they like.
+	 */
+	public void step()
+	{
+		GameLoopListener listener = gameLoopListener;
+
+		input.latch();
+
+		if (listener != null)
+			listener.update(updatePeriod / 1000000000.0);
+	}
+
+	/**
+	 * Determines if this GameArena is running without a display.
+	 * @return true if there is no window or game loop, false otherwise.
+	 */
+	public boolean isHeadless()
+	{
+		return headless;
+	}
+
+	/**
+	 * Determines how many times a thread has had to wait to add or remove objects, because another thread was using the draw list.
+	 * Drawing the screen never holds up the game, so this should stay low even when drawing is slow.
+	 *
+	 * @return the number of times any thread has had to wait, since the GameArena was created.
+	 */
+	public long getLockContentions()
+	{
+		return lockContentions.sum();
+	}
+
+	/**
+	 * Determines how long threads have spent waiting to add or remove objects, because another thread was using the draw list.
+	 *
+	 * @return the total time spent waiting since the GameArena was created, in milliseconds.
+	 */
+	public double getLockWaitTime()
+	{
+		return lockWaitTime.sum() / 1000000.0;
+	}
+
+	/**
+	 * Internal method to take the lock protecting the draw list, recording how long we had to wait for it.
+	 */
+	private void lockScene()
+	{
+		if (sceneLock.tryLock())
+			return;
+
+		long start = System.nanoTime();
+		sceneLock.lock();
+
+		lockContentions.increment();
+		lockWaitTime.add(System.nanoTime() - start);
+	}
+
+	/**
+	 * Internal method to make the current contents of the draw list visible to the renderer.
+	 *
+	 * @param wait true to wait for the draw list if another thread is changing it, false to leave the last published scene in place.
+	 */
+	private void publishScene(boolean wait)
+	{
+		if (wait)
+			this.lockScene();
+		else if (!sceneLock.tryLock())
+			return;
+
+		try
+		{
+			this.publishSnapshot(things.snapshot());
+
+			// Find where added and removed objects are now. This is done after publishing, so any later move is redrawn as normal.
+			for (Drawable d : changedObjects)
+			{
+				changedLayers.add(d.getLayer());
+				this.addChangedArea(this.worldToScreen(d.getBounds()));
+
+				// The object may have been added to another GameArena since it was removed from this one. If so, leave it be.
+				if (things.getLayerOf(d) == null && d.getGameArena() == this)
+					d.setGameArena(null);
+			}
+
+			changedObjects.clear();
+			changedObjectCount = 0;
+
+			// Now the renderer can see the change, redraw whatever it affects.
+			if (changedEverything)
+			{
+				this.redrawAll();
+			}
+			else
+			{
+				for (int layer : changedLayers)
+					this.invalidateLayer(layer);
+
+				for (Rectangle2D r : changedAreas)
+					dirty.add(r);
+			}
+
+			changedAreas.clear();
+			changedLayers.clear();
+			changedEverything = false;
+		}
+		finally
+		{
+			sceneLock.unlock();
+		}
+	}
+
+	/**
+	 * Internal method to make a new snapshot of the draw list visible to the renderer, changing the grid used to find the
+	 * objects on the screen to match. Must be called while holding sceneLock, before changedObjects is cleared.
+	 *
+	 * @param next the snapshot to publish.
+	 */
+	private void publishSnapshot(DrawList.Snapshot next)
+	{
+		SpatialHash index = renderIndex;
+
+		// Keep the grid until the number of objects falls well below the threshold, so it is not rebuilt over and over.
+		if (next.size < renderIndexThreshold / 2 || (index == null && next.size < renderIndexThreshold))
+		{
+			renderIndex = null;
+			movedObjects.clear();
+			scene = next;
+			return;
+		}
+
+		if (index == null)
+		{
+			index = new SpatialHash(renderCellSize);
+			renderIndexStale = true;
+		}
+
+		synchronized (index)
+		{
+			this.applyMoves(index);
+
+			if (renderIndexStale)
+			{
+				index.clear();
+
+				for (Drawable d : things)
+					index.add(d, things.getLayerOf(d), things.getSequenceOf(d));
+
+				renderIndexStale = false;
+			}
+			else
+			{
+				for (Drawable d : changedObjects)
+				{
+					Integer layer = things.getLayerOf(d);
+
+					if (layer == null)
+						index.remove(d);
+					else
+						index.add(d, layer, things.getSequenceOf(d));
+				}
 			}
 
-			window.drawImage(buffer, this.getInsets().left, this.getInsets().top, this);
+			renderIndex = index;
+			scene = next;
 		}
 	}
 
+	/**
+	 * Internal method to find the objects of a scene that lie within an area, using the grid rather than checking every object.
+	 *
+	 * @param s the scene being drawn.
+	 * @param area the area of the screen being drawn.
+	 * @param view the area of the world visible in that area of the screen.
+	 * @return the objects in the area in drawing order, or null if every object needs to be checked instead.
+	 */
+	private Tile findVisible(DrawList.Snapshot s, Rectangle2D area, Rectangle2D view)
+	{
+		SpatialHash index = renderIndex;
+
+		if (index == null)
+			return null;
+
+		ArrayList<Drawable> found = new ArrayList<>();
+		ArrayList<long[]> orders = new ArrayList<>();
+
+		synchronized (index)
+		{
+			// A newer scene has been published since we started drawing, so the grid no longer matches.
+			if (scene != s)
+				return null;
+
+			this.applyMoves(index);
+
+			if (!index.queryWithOrder(view.getX(), view.getY(), view.getWidth(), view.getHeight(), found, orders))
+				return null;
+		}
+
+		// Sort once the grid has been released, so that publishing the next scene does not have to wait for it.
+		int[] layers = SpatialHash.sortByOrder(found, orders);
+
+		Tile t = new Tile((int) area.getX(), (int) area.getY(), (int) area.getWidth(), (int) area.getHeight());
+		int l = 0;
+
+		for (int i=0; i<layers.length; i++)
+		{
+			while (l < s.layers.length && s.layers[l] < layers[i])
+				l++;
+
+			t.add(found.get(i), l);
+		}
+
+		return t;
+	}
+
+	/**
+	 * Internal method to bring the positions held in the grid used for drawing up to date with objects that have moved.
+	 * Must be called while holding the grid's lock.
+	 *
+	 * @param index the grid used for drawing.
+	 */
+	private void applyMoves(SpatialHash index)
+	{
+		Iterator<Drawable> moved = movedObjects.iterator();
+
+		while (moved.hasNext())
+		{
+			Drawable d = moved.next();
+			moved.remove();
+			index.update(d);
+		}
+	}
+
+	/**
+	 * Internal method to draw the background and objects within the given area.
+	 *
+	 * @param g the graphics context to draw onto, clipped to the area.
+	 * @param area the area to draw, or null to draw the whole GameArena.
+	 * @param s the scene to draw.
+	 */
+	private void renderArea(Graphics2D g, Rectangle2D area, DrawList.Snapshot s)
+	{
+		BufferedImage background = this.getScaledBackground();
+
+		// An opaque background covers everything, so there is no need to clear the screen first.
+		if (background == null || background.getTransparency() != Transparency.OPAQUE)
+		{
+			if (area == null)
+				g.clearRect(0,0, arenaWidth, arenaHeight);
+			else
+				g.clearRect((int)area.getX(), (int)area.getY(), (int)area.getWidth(), (int)area.getHeight());
+		}
+
+		if (background != null)
+			g.drawImage(background, 0, 0, null);
+
+		if (area == null)
+			area = new Rectangle2D.Double(0, 0, arenaWidth, arenaHeight);
+
+		// Objects are drawn in world co-ordinates, through the camera. Work out which part of the world is visible.
+		AffineTransform cam = camera;
+		Rectangle2D view = this.screenToWorld(area, cam);
+		Graphics2D world = (Graphics2D) g.create();
+		world.transform(cam);
+
+		// Where possible, only visit the objects in view. Otherwise, check every object.
+		Tile visible = this.findVisible(s, area, view);
+		int k = 0;
+
+		if (visible != null)
+			culledCount += s.size - visible.count;
+
+		for (int i=0; i<s.layers.length; i++)
+		{
+			LayerCache cache = staticLayers.get(s.layers[i]);
+
+			if (cache != null)
+			{
+				g.drawImage(this.getLayerImage(s.items[i], cache), 0, 0, null);
+			}
+			else if (visible == null)
+			{
+				this.renderLayer(world, s.items[i], view);
+			}
+			else
+			{
+				while (k < visible.count && visible.layers[k] < i)
+					k++;
+
+				for (; k < visible.count && visible.layers[k] == i; k++)
+				{
+					visible.items[k].render(world);
+					drawnCount++;
+				}
+			}
+		}
+
+		world.dispose();
+	}
+
+	/**
+	 * Internal method to find the area of the world that is shown in the given area of the screen.
+	 *
+	 * @param area an area of the screen, in pixels.
+	 * @param cam the camera transform in use.
+	 * @return the smallest rectangle in world co-ordinates enclosing everything visible in that area.
+	 */
+	private Rectangle2D screenToWorld(Rectangle2D area, AffineTransform cam)
+	{
+		if (cam.isIdentity())
+			return area;
+
+		try { return cam.createInverse().createTransformedShape(area).getBounds2D(); }
+		catch (NoninvertibleTransformException e) { return area; }
+	}
+
+	/**
+	 * Internal method to draw the objects on a layer that lie within the given area.
+	 * Objects outside of the area cost only a bounds check.
+	 *
+	 * @param g the graphics context to draw onto.
+	 * @param layer the objects on the layer, in drawing order, as held in a snapshot.
+	 * @param area the area to draw.
+	 */
+	private void renderLayer(Graphics2D g, Drawable[][] layer, Rectangle2D area)
+	{
+		double x = area.getX();
+		double y = area.getY();
+		double w = area.getWidth();
+		double h = area.getHeight();
+
+		for (Drawable[] chunk : layer)
+		{
+			for (Drawable d : chunk)
+			{
+				if (d == null)
+					continue;
+
+				if (d.intersects(x, y, w, h))
+				{
+					d.render(g);
+					drawnCount++;
+				}
+				else
+				{
+					culledCount++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Internal method to obtain the image of a static layer, redrawing it first if anything on that layer has changed.
+	 *
+	 * @param layer the objects on the layer, in drawing order, as held in a snapshot.
+	 * @param cache the cache holding the image of that layer.
+	 * @return an image the size of the GameArena, holding everything on that layer.
+	 */
+	private BufferedImage getLayerImage(Drawable[][] layer, LayerCache cache)
+	{
+		if (cache.image == null || cache.image.getWidth() != arenaWidth || cache.image.getHeight() != arenaHeight)
+		{
+			GraphicsConfiguration gc = this.getGraphicsConfiguration();
+
+			if (gc != null)
+				cache.image = gc.createCompatibleImage(Math.max(arenaWidth, 1), Math.max(arenaHeight, 1), Transparency.TRANSLUCENT);
+			else
+				cache.image = new BufferedImage(Math.max(arenaWidth, 1), Math.max(arenaHeight, 1), BufferedImage.TYPE_INT_ARGB_PRE);
+
+			cache.valid = false;
+		}
+
+		AffineTransform cam = camera;
+		int width = cache.image.getWidth();
+		int height = cache.image.getHeight();
+
+		// If the camera has only moved since the image was drawn, slide the image along and draw just the part uncovered.
+		// The camera always moves by whole pixels, so the result is the same as drawing the whole layer again.
+		if (cache.valid && !cam.equals(cache.camera) && cache.camera.getScaleX() == cam.getScaleX() && cache.camera.getScaleY() == cam.getScaleY()
+			&& cache.camera.getShearX() == cam.getShearX() && cache.camera.getShearY() == cam.getShearY())
+		{
+			int dx = (int) Math.round(cam.getTranslateX() - cache.camera.getTranslateX());
+			int dy = (int) Math.round(cam.getTranslateY() - cache.camera.getTranslateY());
+
+			if (Math.abs(dx) < width && Math.abs(dy) < height)
+			{
+				cache.camera = cam;
+
+				// Copy transparent pixels as they are, rather than blending them with what is already there.
+				Graphics2D g = cache.image.createGraphics();
+				g.setComposite(AlphaComposite.Src);
+				g.copyArea(0, 0, width, height, dx, dy);
+				g.setComposite(AlphaComposite.SrcOver);
+				g.setRenderingHints(renderingHints);
+
+				if (dx != 0)
+					this.redrawLayerArea(g, layer, dx > 0 ? 0 : width + dx, 0, Math.abs(dx), height, cam);
+
+				if (dy != 0)
+					this.redrawLayerArea(g, layer, 0, dy > 0 ? 0 : height + dy, width, Math.abs(dy), cam);
+
+				g.dispose();
+				return cache.image;
+			}
+		}
+
+		if (!cache.valid || !cam.equals(cache.camera))
+		{
+			// Mark the cache as valid before we start, so that a change made while we are drawing is not lost.
+			cache.valid = true;
+			cache.camera = cam;
+
+			Graphics2D g = cache.image.createGraphics();
+			g.setRenderingHints(renderingHints);
+			this.redrawLayerArea(g, layer, 0, 0, width, height, cam);
+			g.dispose();
+		}
+
+		return cache.image;
+	}
+
+	/**
+	 * Internal method to clear part of the image of a static layer, and draw the objects on that layer within it.
+	 *
+	 * @param g the graphics context of the image.
+	 * @param layer the objects on the layer, in drawing order, as held in a snapshot.
+	 * @param x the x co-ordinate of the left of the part to draw, in pixels.
+	 * @param y the y co-ordinate of the top of the part to draw, in pixels.
+	 * @param w the width of the part to draw, in pixels.
+	 * @param h the height of the part to draw, in pixels.
+	 * @param cam the camera to draw through.
+	 */
+	private void redrawLayerArea(Graphics2D g, Drawable[][] layer, int x, int y, int w, int h, AffineTransform cam)
+	{
+		Graphics2D world = (Graphics2D) g.create();
+		world.clipRect(x, y, w, h);
+		world.setComposite(AlphaComposite.Clear);
+		world.fillRect(x, y, w, h);
+		world.setComposite(AlphaComposite.SrcOver);
+		world.transform(cam);
+
+		// Objects just outside the area may still reach into it with their antialiased edges.
+		int p = DirtyRegion.padding;
+		this.renderLayer(world, layer, this.screenToWorld(new Rectangle2D.Double(x - p, y - p, w + p * 2, h + p * 2), cam));
+
+		world.dispose();
+	}
+
+	/**
+	 * Marks a layer as static (or not). Everything on a static layer is drawn once into an image, which is then
+	 * reused every frame until an object on that layer is added, removed or changed. This can make a big difference
+	 * to the speed of games with a large, unchanging background made from many objects.
+	 *
+	 * @param layer the layer number.
+	 * @param isStatic true if the layer rarely changes, false otherwise. Layers are not static by default.
+	 */
+	public void setStaticLayer(int layer, boolean isStatic)
+	{
+		if (isStatic)
+			staticLayers.putIfAbsent(layer, new LayerCache());
+		else
+			staticLayers.remove(layer);
+
+		dirty.addAll();
+	}
+
+	/**
+	 * Determines if a layer has been marked as static.
+	 *
+	 * @param layer the layer number.
+	 * @return true if the given layer is static, false otherwise.
+	 */
+	public boolean isStaticLayer(int layer)
+	{
+		return staticLayers.containsKey(layer);
+	}
+
+	/**
+	 * Internal method to mark everything as needing to be redrawn, including the images of static layers.
+	 */
+	private void redrawAll()
+	{
+		for (LayerCache cache : staticLayers.values())
+			cache.valid = false;
+
+		dirty.addAll();
+	}
+
+	/**
+	 * Called by objects in this GameArena when they change how they look without moving,
+	 * so that the area they cover is redrawn - <p><B>YOU DO NOT (AND SHOULD NOT) NEED TO CALL THIS METHOD.</b></p>
+	 *
+	 * @param d the object that is changing.
+	 */
+	void invalidate(Drawable d)
+	{
+		this.invalidate(d, d.getBounds());
+	}
+
+	/**
+	 * Called by objects in this GameArena when a given area of the world they draw on has changed - <p><B>YOU DO NOT (AND SHOULD NOT) NEED TO CALL THIS METHOD.</b></p>
+	 * Objects that move call this once, after the change, with an area covering both where they were and where they are now.
+	 * Marking the old area before the change would let it be redrawn while the object was still there, leaving a ghost behind.
+	 *
+	 * @param d the object that is changing.
+	 * @param area the area of the world to redraw.
+	 */
+	void invalidate(Drawable d, Rectangle2D area)
+	{
+		this.invalidateLayer(d.getLayer());
+
+		SpatialHash index = spatialIndex;
+		if (index != null)
+			index.update(d);
+
+		if (renderIndex != null)
+			movedObjects.add(d);
+
+		// An object added or removed since the scene was last published is redrawn along with that change, not before.
+		if (changedObjectCount > 0)
+		{
+			this.lockScene();
+			try
+			{
+				if (changedObjects.contains(d))
+				{
+					changedLayers.add(d.getLayer());
+					this.addChangedArea(this.worldToScreen(area));
+					return;
+				}
+			}
+			finally
+			{
+				sceneLock.unlock();
+			}
+		}
+
+		dirty.add(this.worldToScreen(area));
+	}
+
+	/**
+	 * Internal method to record that an object has been added or removed. The area it covers is redrawn
+	 * once the change has been published to the renderer. Must be called while holding sceneLock.
+	 *
+	 * @param d the object that has been added or removed.
+	 * @param layer the layer the object was held on in the draw list.
+	 */
+	private void sceneChanged(Drawable d, int layer)
+	{
+		changedLayers.add(layer);
+		this.addChangedArea(this.worldToScreen(d.getBounds()));
+
+		changedObjects.add(d);
+		changedObjectCount = changedObjects.size();
+	}
+
+	/**
+	 * Internal method to record an area of the screen to redraw once the scene is next published.
+	 * Must be called while holding sceneLock.
+	 *
+	 * @param r the area of the screen to redraw.
+	 */
+	private void addChangedArea(Rectangle2D r)
+	{
+		if (changedAreas.size() < 64)
+			changedAreas.add(r);
+		else
+			changedEverything = true;
+	}
+
+	/**
+	 * Internal method to find the area of the screen covering the given area of the world.
+	 *
+	 * @param bounds an area of the world.
+	 * @return the smallest rectangle in screen co-ordinates enclosing that area.
+	 */
+	private Rectangle2D worldToScreen(Rectangle2D bounds)
+	{
+		AffineTransform cam = camera;
+
+		if (cam.isIdentity())
+			return bounds;
+
+		return cam.createTransformedShape(bounds).getBounds2D();
+	}
+
+	/**
+	 * Internal method to discard the image of the given layer, if it is static.
+	 *
+	 * @param layer the layer number.
+	 */
+	private void invalidateLayer(int layer)
+	{
+		LayerCache cache = staticLayers.get(layer);
+
+		if (cache != null)
+			cache.valid = false;
+	}
+
 	//
 	// Shouldn't really handle colour this way, but the student's haven't been introduced
 	// to constants properly yet, hmmm....
 	//
-	private Color getColourFromString(String col)
+	// Shapes resolve their colour through here once, when it is set, rather than on every frame.
+	//
+	static Color getColourFromString(String col)
 	{
-		Color c = colours.get(col.toUpperCase());
+		if (col == null)
+			return Color.WHITE;
+
+		String key = col.toUpperCase();
+		Color c = colours.get(key);
 
-		if (c == null && col.startsWith("#"))
+		if (c == null && col.startsWith("#") && col.length() >= 7)
 		{
-			int r = Integer.valueOf( col.substring( 1, 3 ), 16 );
-			int g = Integer.valueOf( col.substring( 3, 5 ), 16 );
-			int b = Integer.valueOf( col.substring( 5, 7 ), 16 );
+			try
+			{
+				int r = Integer.parseInt( col.substring( 1, 3 ), 16 );
+				int g = Integer.parseInt( col.substring( 3, 5 ), 16 );
+				int b = Integer.parseInt( col.substring( 5, 7 ), 16 );
 
-			c = new Color(r,g,b);
-			colours.put(col.toUpperCase(), c);
+				c = new Color(r,g,b);
+				colours.putIfAbsent(key, c);
+			}
+			catch (NumberFormatException e) {}
 		}
 
 		if (c == null)
@@ -341,72 +1920,95 @@ public class GameArena extends JPanel implements Runnable, KeyListener, MouseLis
 	 * Adds a given Object to the drawlist, maintaining z buffering order.
 	 *
 	 * @param o the object to add to the drawlist.
+	 * @return true if the object was added, or false if it is already in the drawlist or the drawlist is full.
 	 */
-	private void addThing(Object o, int layer)
+	private boolean addThing(Drawable o)
 	{
-		boolean added = false;
-
 		if (exiting)
-			return;
+			return false;
 
-		synchronized (this)
+		this.lockScene();
+		try
 		{
-			if (things.size() > 100000)
-			{
-				System.out.println("\n\n");
-				System.out.println(" ********************************************************* ");
-				System.out.println(" ***** Only 100000 Objects Supported per Game Arena! ***** ");
-				System.out.println(" ********************************************************* ");
-				System.out.println("\n");
-				System.out.println("-- Joe\n\n");
-
-				this.exit();
-			}
-			else
-			{
-				// Try to insert this object into the list.
-				for (int i=0; i<things.size(); i++)
-				{
-					int l = 0;
-					Object obj = things.get(i);
+			int limit = objectLimit;
 
-					if (obj instanceof Ball)
-						l = ((Ball)obj).getLayer();
+			if (limit > 0 && things.size() >= limit)
+				return false;
 
-					if (obj instanceof Rectangle)
-						l = ((Rectangle)obj).getLayer();
+			if (!things.add(o, o.getLayer()))
+				return false;
 
-					if (obj instanceof Line)
-						l = ((Line)obj).getLayer();
+			o.setGameArena(this);
+			this.sceneChanged(o, o.getLayer());
 
-					if (obj instanceof Text)
-						l = ((Text)obj).getLayer();
+			// Particles are not solid, so are left out of collision queries.
+			if (spatialIndex != null && !(o instanceof ParticleSystem))
+				spatialIndex.add(o);
+
+			return true;
+		}
+		finally
+		{
+			sceneLock.unlock();
+		}
+	}
+
+	/**
+	 * Limits the number of objects that can be added to this GameArena. Once the limit is reached,
+	 * further objects are not added until others are removed. By default there is no limit.
+	 *
+	 * @param limit the maximum number of objects, or 0 for no limit.
+	 */
+	public void setObjectLimit(int limit)
+	{
+		objectLimit = Math.max(limit, 0);
+	}
 
-					if (layer < l)
-					{
-						things.add(i,o);
-						added = true;
-						break;
-					}
-				}
+	/**
+	 * Determines the maximum number of objects that can be added to this GameArena.
+	 * @return the maximum number of objects, or 0 if there is no limit.
+	 */
+	public int getObjectLimit()
+	{
+		return objectLimit;
+	}
 
-				// If there are no items in the list with an equivalent or higher layer, append this object to the end of the list.
-				if (!added)
-					things.add(o);
-			}
-		}
+	/**
+	 * Determines how many objects are currently in this GameArena.
+	 * @return the number of objects in this GameArena. A ParticleSystem counts as a single object.
+	 */
+	public int getObjectCount()
+	{
+		return things.size();
 	}
 
 	/**
 	 * Remove an object from the drawlist.
 	 *
+	 * This takes constant time, so the drawlist is never locked for more than a moment.
+	 *
 	 * @param o the object to remove from the drawlist.
 	 */
-	private void removeObject(Object o)
+	private void removeObject(Drawable o)
 	{
-		synchronized (this)
+		this.lockScene();
+		try
+		{
+			// An object may have changed its layer since it was added, so use the layer it is actually held on.
+			Integer layer = things.getLayerOf(o);
+
+			// The object is told it has been removed once the change is published.
+			if (layer != null && things.remove(o))
+			{
+				this.sceneChanged(o, layer);
+
+				if (spatialIndex != null)
+					spatialIndex.remove(o);
+			}
+		}
+		finally
 		{
-			things.remove(o);
+			sceneLock.unlock();
 		}
 	}
 
@@ -415,10 +2017,11 @@ public class GameArena extends JPanel implements Runnable, KeyListener, MouseLis
 	 * Once a Ball is added, it will automatically appear on the window.
 	 *
 	 * @param b the ball to add to the GameArena.
+	 * @return true if the ball was added, or false if it has already been added or the GameArena already holds as many objects as its limit allows.
 	 */
-	public void addBall(Ball b)
+	public boolean addBall(Ball b)
 	{
-		this.addThing(b, b.getLayer());
+		return this.addThing(b);
 	}
 
 	/**
@@ -426,10 +2029,11 @@ public class GameArena extends JPanel implements Runnable, KeyListener, MouseLis
 	 * Once a rectangle is added, it will automatically appear on the window.
 	 *
 	 * @param r the rectangle to add to the GameArena.
+	 * @return true if the rectangle was added, or false if it has already been added or the GameArena already holds as many objects as its limit allows.
 	 */
-	public void addRectangle(Rectangle r)
+	public boolean addRectangle(Rectangle r)
 	{
-		this.addThing(r, r.getLayer());
+		return this.addThing(r);
 	}
 
 	/**
@@ -437,10 +2041,11 @@ public class GameArena extends JPanel implements Runnable, KeyListener, MouseLis
 	 * Once a Line is added, it will automatically appear on the window.
 	 *
 	 * @param l the line to add to the GameArena.
+	 * @return true if the line was added, or false if it has already been added or the GameArena already holds as many objects as its limit allows.
 	 */
-	public void addLine(Line l)
+	public boolean addLine(Line l)
 	{
-		this.addThing(l, l.getLayer());
+		return this.addThing(l);
 	}
 
 	/**
@@ -448,10 +2053,24 @@ public class GameArena extends JPanel implements Runnable, KeyListener, MouseLis
 	 * Once a Text object is added, it will automatically appear on the window.
 	 *
 	 * @param t the text object to add to the GameArena.
+	 * @return true if the text object was added, or false if it has already been added or the GameArena already holds as many objects as its limit allows.
+	 */
+	public boolean addText(Text t)
+	{
+		return this.addThing(t);
+	}
+
+	/**
+	 * Adds a given ParticleSystem to the GameArena.
+	 * Once a ParticleSystem is added, its particles will automatically appear on the window.
+	 * However many particles it holds, a ParticleSystem counts as a single object.
+	 *
+	 * @param p the particle system to add to the GameArena.
+	 * @return true if the particle system was added, or false if it has already been added or the GameArena already holds as many objects as its limit allows.
 	 */
-	public void addText(Text t)
+	public boolean addParticleSystem(ParticleSystem p)
 	{
-		this.addThing(t, t.getLayer());
+		return this.addThing(p);
 	}
 
 
@@ -499,38 +2118,220 @@ public class GameArena extends JPanel implements Runnable, KeyListener, MouseLis
 		this.removeObject(t);
 	}
 
+	/**
+	 * Remove a ParticleSystem from the GameArena.
+	 * Once a ParticleSystem is removed, its particles will no longer appear on the window.
+	 *
+	 * @param p the particle system to remove from the GameArena.
+	 */
+	public void removeParticleSystem(ParticleSystem p)
+	{
+		this.removeObject(p);
+	}
+
 	/**
 	 * Removes every object that has ever been added to the GameArena. Nothing
 	 * should appear on the GameArena window after this has executed.
 	 */
 	public void clearGameArena() {
-		synchronized(this) {
+		this.lockScene();
+		try {
+			for (Drawable d : things)
+				d.setGameArena(null);
+
 			things.clear();
+			changedEverything = true;
+			renderIndexStale = true;
+
+			if (spatialIndex != null)
+				spatialIndex.clear();
+		}
+		finally {
+			sceneLock.unlock();
 		}
 	}
 
 	/**
-	 * Pause for a 1/50 of a second.
-	 * This method causes your program to delay for 1/50th of a second. You'll find this useful if you're trying to animate your application.
+	 * Finds every object in the GameArena that overlaps the given area.
+	 * This is much quicker than checking every object in turn when there are many objects.
 	 *
+	 * @param x the x co-ordinate of the top left corner of the area.
+	 * @param y the y co-ordinate of the top left corner of the area.
+	 * @param width the width of the area.
+	 * @param height the height of the area.
+	 * @return a list of the objects whose bounds overlap the area.
 	 */
-	public void pause()
+	public java.util.List<Drawable> queryRegion(double x, double y, double width, double height)
 	{
-		try { Thread.sleep(20); }
-		catch (Exception e) {};
+		java.util.List<Drawable> results = new ArrayList<>();
+		this.getSpatialIndex().query(x, y, width, height, results);
+		return results;
 	}
 
 	/**
-	 *	Internal method to check if ASCII code is A-Z.
-	 *	@param asciiVal the ascii character value to check if it is within A-Z ascii.
-	 *	@return true or false if the ascii character value is A-Z ascii.
+	 * Finds every object in the GameArena that covers the given point.
+	 *
+	 * @param x the x co-ordinate of the point.
+	 * @param y the y co-ordinate of the point.
+	 * @return a list of the objects whose bounds contain the point.
 	 */
-	private boolean isAsciiAZ(int asciiVal)
+	public java.util.List<Drawable> queryPoint(double x, double y)
 	{
-		if (asciiVal >= asciiAZOffset && asciiVal <= asciiAZOffset+alphabetLength)
-			return true;
-			
-		return false;
+		return this.queryRegion(x, y, Double.MIN_VALUE, Double.MIN_VALUE);
+	}
+
+	/**
+	 * Finds every pair of objects in the GameArena that are colliding.
+	 * Only objects that are near each other are compared, so this is much quicker than checking every pair of objects in turn.
+	 *
+	 * Every pair is found before any is reported, so the action is free to move or remove objects.
+	 *
+	 * @param action called once for every pair of colliding objects.
+	 */
+	public void forEachCollidingPair(BiConsumer<Drawable, Drawable> action)
+	{
+		ArrayList<Drawable> pairs = new ArrayList<>();
+		this.getSpatialIndex().findOverlappingPairs(pairs);
+
+		// No locks are held here, so the action can safely change the GameArena.
+		for (int i=0; i<pairs.size(); i+=2)
+		{
+			Drawable a = pairs.get(i);
+			Drawable b = pairs.get(i+1);
+
+			if (Collision.collides(a, b))
+				action.accept(a, b);
+		}
+	}
+
+	/**
+	 * Finds every pair of colliding objects of the given type, using every processor core available.
+	 * This is designed for games with many thousands of objects; each object is only compared with those near it,
+	 * and the work is shared between several threads. The results are always reported in the same order:
+	 * by the drawing order of the first object of each pair, then by that of the second.
+	 *
+	 * @param filter the type of object to check (e.g. Ball.class), or null to check every object in the GameArena.
+	 * @param action called once for every pair of colliding objects, on the thread that called this method.
+	 */
+	public void findCollisions(Class<? extends Drawable> filter, BiConsumer<Drawable, Drawable> action)
+	{
+		ArrayList<Drawable> objects = new ArrayList<>();
+
+		this.lockScene();
+		try
+		{
+			for (Drawable d : things)
+				if (filter == null ? !(d instanceof ParticleSystem) : filter.isInstance(d))
+					objects.add(d);
+		}
+		finally
+		{
+			sceneLock.unlock();
+		}
+
+		Collision.findAll(objects.toArray(new Drawable[0]), collisionPool, action);
+	}
+
+	/**
+	 * Sets the number of threads used by findCollisions.
+	 *
+	 * @param threads the number of threads to use. By default, one thread per processor core is used.
+	 */
+	public void setCollisionThreads(int threads)
+	{
+		if (threads <= 0)
+			return;
+
+		ForkJoinPool old = collisionPool;
+		collisionPool = new ForkJoinPool(threads);
+
+		if (old != ForkJoinPool.commonPool())
+			old.shutdown();
+	}
+
+	/**
+	 * Sets the size of the grid cells used to find nearby objects. For best results, this should be
+	 * roughly the size of a typical moving object.
+	 *
+	 * @param size the width and height of each grid cell, in pixels. The default is 64.
+	 */
+	public void setSpatialCellSize(double size)
+	{
+		if (size <= 0)
+			return;
+
+		this.lockScene();
+		try
+		{
+			spatialCellSize = size;
+			spatialIndex = null;
+		}
+		finally
+		{
+			sceneLock.unlock();
+		}
+	}
+
+	/**
+	 * Internal method to obtain the grid used to find nearby objects. The grid is only built the first time it is needed,
+	 * so that games which never use it do not pay to keep it up to date.
+	 *
+	 * @return the spatial index of this GameArena.
+	 */
+	private SpatialHash getSpatialIndex()
+	{
+		this.lockScene();
+		try
+		{
+			if (spatialIndex == null)
+			{
+				SpatialHash index = new SpatialHash(spatialCellSize);
+
+				for (Drawable d : things)
+					if (!(d instanceof ParticleSystem))
+						index.add(d);
+
+				spatialIndex = index;
+			}
+
+			return spatialIndex;
+		}
+		finally
+		{
+			sceneLock.unlock();
+		}
+	}
+
+	/**
+	 * Pause for a 1/50 of a second.
+	 * This method causes your program to delay for 1/50th of a second. You'll find this useful if you're trying to animate your application.
+	 *
+	 * The delay is measured from the end of the previous pause, so a program that calls this once per frame
+	 * will run at a steady 50 frames per second, regardless of how long each frame takes to compute (up to 1/50th of a second).
+	 */
+	public void pause()
+	{
+		long now = System.nanoTime();
+
+		// If we haven't paused for a while, start timing afresh from now.
+		if (pauseDeadline == 0 || now - pauseDeadline > pausePeriod)
+			pauseDeadline = now;
+
+		pauseDeadline += pausePeriod;
+
+		// Everything the game has done this tick is now complete, so can be drawn.
+		this.publishScene(true);
+
+		// Games using a GameLoopListener see input change at the start of each update instead.
+		if (gameLoopListener == null)
+			input.latch();
+
+		// Nobody is watching a headless GameArena, so there is no reason to wait.
+		if (headless)
+			return;
+
+		try { waitUntil(pauseDeadline); }
+		catch (Exception e) {};
 	}
 
 	/**
@@ -540,12 +2341,50 @@ public class GameArena extends JPanel implements Runnable, KeyListener, MouseLis
 	 */
 	public boolean letterPressed(char key)
 	{
-		if (Character.isLetter(key))
-			if(isAsciiAZ((int) Character.toUpperCase(key)))
-				return alphasPressed[(int) Character.toUpperCase(key) -asciiAZOffset];
+		char c = Character.toUpperCase(key);
+
+		// The key codes for the letters A-Z are the same as their ASCII codes.
+		if (c >= 'A' && c <= 'Z')
+			return input.isKeyDown(c);
+
 		return false;
 	}
 
+	/**
+	 * Determines if the user is currently holding down the given key.
+	 *
+	 * @param keyCode the key to check, as one of the KeyEvent.VK_ constants (e.g. KeyEvent.VK_W or KeyEvent.VK_F1).
+	 * @return true if the key is held down, false otherwise.
+	 */
+	public boolean isKeyDown(int keyCode)
+	{
+		return input.isKeyDown(keyCode);
+	}
+
+	/**
+	 * Determines if the user pressed the given key since the previous update. Holding a key down only counts as one press.
+	 * This is worked out once at the start of each update (or each call to pause()), so gives the same answer throughout an update.
+	 *
+	 * @param keyCode the key to check, as one of the KeyEvent.VK_ constants.
+	 * @return true if the key was pressed since the previous update, false otherwise.
+	 */
+	public boolean wasPressedThisFrame(int keyCode)
+	{
+		return input.wasPressed(keyCode);
+	}
+
+	/**
+	 * Determines if the user released the given key since the previous update.
+	 * This is worked out once at the start of each update (or each call to pause()), so gives the same answer throughout an update.
+	 *
+	 * @param keyCode the key to check, as one of the KeyEvent.VK_ constants.
+	 * @return true if the key was released since the previous update, false otherwise.
+	 */
+	public boolean wasReleasedThisFrame(int keyCode)
+	{
+		return input.wasReleased(keyCode);
+	}
+
  	public void keyPressed(KeyEvent e)
 	{
 		keyAction(e,true);
@@ -555,25 +2394,8 @@ public class GameArena extends JPanel implements Runnable, KeyListener, MouseLis
 	{
 		int code = e.getKeyCode();
 
-		if (code == KeyEvent.VK_UP)
-			up = yn;
-		if (code == KeyEvent.VK_DOWN)
-			down = yn;
-		if (code == KeyEvent.VK_LEFT)
-			left = yn;
-		if (code == KeyEvent.VK_RIGHT)
-			right = yn;
-		if (code == KeyEvent.VK_SPACE)
-			space = yn;
-		if (code == KeyEvent.VK_SHIFT)
-			shift = yn;
-		if (code == KeyEvent.VK_ESCAPE)
-			esc = yn;
-		if (code == KeyEvent.VK_ENTER)
-			enter = yn;
-		//ASCII A-Z check
-		if (isAsciiAZ(code))
-			alphasPressed[code-asciiAZOffset] = yn;
+		input.setKey(code, yn);
+		inputQueue.offer(yn ? InputQueue.KEY_PRESSED : InputQueue.KEY_RELEASED, code, 0, 0);
 	}
 
 	public void keyReleased(KeyEvent e){
@@ -588,20 +2410,14 @@ public class GameArena extends JPanel implements Runnable, KeyListener, MouseLis
 
 	public void mousePressed(MouseEvent e)
 	{
-		if (e.getButton() == MouseEvent.BUTTON1)
-			this.leftMouse = true;
-
-		if (e.getButton() == MouseEvent.BUTTON3)
-			this.rightMouse = true;
+		input.setButton(e.getButton(), true);
+		inputQueue.offer(InputQueue.MOUSE_PRESSED, e.getButton(), e.getX(), e.getY());
 	}
 
 	public void mouseReleased(MouseEvent e)
 	{
-		if (e.getButton() == MouseEvent.BUTTON1)
-			this.leftMouse = false;
-
-		if (e.getButton() == MouseEvent.BUTTON3)
-			this.rightMouse = false;
+		input.setButton(e.getButton(), false);
+		inputQueue.offer(InputQueue.MOUSE_RELEASED, e.getButton(), e.getX(), e.getY());
 	}
 
 	public void mouseEntered(MouseEvent e)
@@ -618,14 +2434,172 @@ public class GameArena extends JPanel implements Runnable, KeyListener, MouseLis
 
 	public void mouseMoved(MouseEvent e)
 	{
-		mouseX = e.getX();
-		mouseY = e.getY();
+		mousePosition = ((long) e.getX() << 32) | (e.getY() & 0xffffffffL);
+		inputQueue.offer(InputQueue.MOUSE_MOVED, 0, e.getX(), e.getY());
 	}
 
 	public void mouseDragged(MouseEvent e)
 	{
-		mouseX = e.getX();
-		mouseY = e.getY();
+		this.mouseMoved(e);
+	}
+
+	public void mouseWheelMoved(MouseWheelEvent e)
+	{
+		input.addWheel(e.getPreciseWheelRotation());
+		inputQueue.offer(InputQueue.MOUSE_WHEEL, Float.floatToRawIntBits((float) e.getPreciseWheelRotation()), e.getX(), e.getY());
+	}
+
+	/**
+	 * Delivers every keyboard and mouse event that has happened since this method was last called, in the order they happened.
+	 * Unlike upPressed() and similar methods, this never misses a key that was pressed and released again between two updates.
+	 * Call this once at the start of each update, always from the same thread.
+	 *
+	 * @param listener the listener to deliver events to.
+	 * @return the number of events delivered.
+	 */
+	public int drainInput(InputListener listener)
+	{
+		return inputQueue.drain(listener, inverseCamera);
+	}
+
+	/**
+	 * Determines how many keyboard and mouse events have been lost because drainInput was not called often enough.
+	 * Up to 1024 events are held between calls.
+	 *
+	 * @return the number of events lost since the GameArena was created.
+	 */
+	public long getDroppedInputEvents()
+	{
+		return inputQueue.getDropped();
+	}
+
+	/**
+	 * Moves the camera, so that the given point in the world is shown at the top left of the GameArena window.
+	 * This scrolls everything in the GameArena at once, which is much quicker than moving every object.
+	 * By default the camera is at (0,0), so world co-ordinates and window co-ordinates are the same.
+	 * The view is always lined up with whole pixels of the window, so small movements of the camera may not show until they add up to a pixel.
+	 *
+	 * @param x the x co-ordinate of the world to show at the left of the window.
+	 * @param y the y co-ordinate of the world to show at the top of the window.
+	 */
+	public void setCameraPosition(double x, double y)
+	{
+		synchronized (this)
+		{
+			cameraX = x;
+			cameraY = y;
+			this.updateCamera();
+		}
+	}
+
+	/**
+	 * Moves the camera by the given amount.
+	 *
+	 * @param dx the distance to move on the x axis (in world co-ordinates)
+	 * @param dy the distance to move on the y axis (in world co-ordinates)
+	 */
+	public void moveCamera(double dx, double dy)
+	{
+		synchronized (this)
+		{
+			cameraX += dx;
+			cameraY += dy;
+			this.updateCamera();
+		}
+	}
+
+	/**
+	 * Obtains the position of the camera.
+	 * @return the x co-ordinate of the world shown at the left of the window (when not zoomed or rotated).
+	 */
+	public double getCameraX()
+	{
+		return cameraX;
+	}
+
+	/**
+	 * Obtains the position of the camera.
+	 * @return the y co-ordinate of the world shown at the top of the window (when not zoomed or rotated).
+	 */
+	public double getCameraY()
+	{
+		return cameraY;
+	}
+
+	/**
+	 * Zooms the camera in or out, around the centre of the window.
+	 *
+	 * @param zoom the magnification to use. 1 is normal size, 2 is twice normal size and so on. Must be greater than zero.
+	 */
+	public void setCameraZoom(double zoom)
+	{
+		if (zoom <= 0)
+			return;
+
+		synchronized (this)
+		{
+			cameraZoom = zoom;
+			this.updateCamera();
+		}
+	}
+
+	/**
+	 * Obtains the magnification of the camera.
+	 * @return the camera zoom, where 1 is normal size.
+	 */
+	public double getCameraZoom()
+	{
+		return cameraZoom;
+	}
+
+	/**
+	 * Rotates the camera around the centre of the window.
+	 *
+	 * @param degrees the angle to rotate the view by, in degrees clockwise.
+	 */
+	public void setCameraRotation(double degrees)
+	{
+		synchronized (this)
+		{
+			cameraRotation = degrees;
+			this.updateCamera();
+		}
+	}
+
+	/**
+	 * Obtains the rotation of the camera.
+	 * @return the angle the view is rotated by, in degrees clockwise.
+	 */
+	public double getCameraRotation()
+	{
+		return cameraRotation;
+	}
+
+	/**
+	 * Internal method to recalculate the camera transform, after the camera or the size of the GameArena changes.
+	 */
+	private void updateCamera()
+	{
+		double cx = arenaWidth / 2.0;
+		double cy = arenaHeight / 2.0;
+
+		AffineTransform t = new AffineTransform();
+		t.translate(cx, cy);
+		t.rotate(Math.toRadians(cameraRotation));
+		t.scale(cameraZoom, cameraZoom);
+		t.translate(-cx - cameraX, -cy - cameraY);
+
+		// Keep the camera on whole pixels, so that moving it slides everything by whole pixels: static layers can then be
+		// slid along rather than drawn again, and edges do not shimmer as the camera scrolls.
+		t = new AffineTransform(t.getScaleX(), t.getShearY(), t.getShearX(), t.getScaleY(), Math.round(t.getTranslateX()), Math.round(t.getTranslateY()));
+
+		try { inverseCamera = t.createInverse(); }
+		catch (NoninvertibleTransformException e) { return; }
+
+		camera = t;
+
+		// Everything on the screen has moved. Static layers check the camera themselves, and are only drawn again in full if it has zoomed or turned.
+		dirty.addAll();
 	}
 
 	/**
@@ -652,7 +2626,7 @@ public class GameArena extends JPanel implements Runnable, KeyListener, MouseLis
 	 */
 	public boolean upPressed()
 	{
-		return up;
+		return input.isKeyDown(KeyEvent.VK_UP);
 	}
 
 	/**
@@ -661,7 +2635,7 @@ public class GameArena extends JPanel implements Runnable, KeyListener, MouseLis
 	 */
 	public boolean downPressed()
 	{
-		return down;
+		return input.isKeyDown(KeyEvent.VK_DOWN);
 	}
 
 	/**
@@ -670,7 +2644,7 @@ public class GameArena extends JPanel implements Runnable, KeyListener, MouseLis
 	 */
 	public boolean leftPressed()
 	{
-		return left;
+		return input.isKeyDown(KeyEvent.VK_LEFT);
 	}
 
 	/**
@@ -679,7 +2653,7 @@ public class GameArena extends JPanel implements Runnable, KeyListener, MouseLis
 	 */
 	public boolean rightPressed()
 	{
-		return right;
+		return input.isKeyDown(KeyEvent.VK_RIGHT);
 	}
 
 	/**
@@ -688,7 +2662,7 @@ public class GameArena extends JPanel implements Runnable, KeyListener, MouseLis
 	 */
 	public boolean spacePressed()
 	{
-		return space;
+		return input.isKeyDown(KeyEvent.VK_SPACE);
 	}
 
         /**
@@ -697,7 +2671,7 @@ public class GameArena extends JPanel implements Runnable, KeyListener, MouseLis
 	 */
 	public boolean escPressed()
 	{
-		return esc;
+		return input.isKeyDown(KeyEvent.VK_ESCAPE);
 	}
 
 	/**
@@ -706,7 +2680,7 @@ public class GameArena extends JPanel implements Runnable, KeyListener, MouseLis
 	 */
 	public boolean enterPressed()
 	{
-		return enter;
+		return input.isKeyDown(KeyEvent.VK_ENTER);
 	}
 
 	/**
@@ -715,7 +2689,7 @@ public class GameArena extends JPanel implements Runnable, KeyListener, MouseLis
 	 */
 	public boolean shiftPressed()
 	{
-		return shift;
+		return input.isKeyDown(KeyEvent.VK_SHIFT);
 	}
 
 	/**
@@ -724,7 +2698,7 @@ public class GameArena extends JPanel implements Runnable, KeyListener, MouseLis
 	 */
 	public boolean leftMousePressed()
 	{
-		return leftMouse;
+		return input.isButtonDown(MouseEvent.BUTTON1);
 	}
 
 	/**
@@ -733,25 +2707,78 @@ public class GameArena extends JPanel implements Runnable, KeyListener, MouseLis
 	 */
 	public boolean rightMousePressed()
 	{
-		return rightMouse;
+		return input.isButtonDown(MouseEvent.BUTTON3);
+	}
+
+	/**
+	 * Determines if the user is currently pressing the given mouse button.
+	 *
+	 * @param button the button to check: 1 for the left button, 2 for the middle button, 3 for the right button, and so on for any extra buttons.
+	 * @return true if the button is pressed, false otherwise.
+	 */
+	public boolean isMouseButtonDown(int button)
+	{
+		return input.isButtonDown(button);
+	}
+
+	/**
+	 * Determines if the user pressed the given mouse button since the previous update.
+	 *
+	 * @param button the button to check: 1 for the left button, 2 for the middle button, 3 for the right button.
+	 * @return true if the button was pressed since the previous update, false otherwise.
+	 */
+	public boolean wasMouseButtonPressedThisFrame(int button)
+	{
+		return input.wasButtonPressed(button);
+	}
+
+	/**
+	 * Determines if the user released the given mouse button since the previous update.
+	 *
+	 * @param button the button to check: 1 for the left button, 2 for the middle button, 3 for the right button.
+	 * @return true if the button was released since the previous update, false otherwise.
+	 */
+	public boolean wasMouseButtonReleasedThisFrame(int button)
+	{
+		return input.wasButtonReleased(button);
+	}
+
+	/**
+	 * Determines how far the mouse wheel has been turned since the previous update.
+	 *
+	 * @return the distance turned, in notches. Positive values mean the wheel was turned towards the user. Some mice and trackpads report fractions of a notch.
+	 */
+	public double getMouseWheelRotation()
+	{
+		return input.getWheel();
 	}
 
 	/**
 	 * Gathers location informaiton on the mouse pointer.
-	 * @return the current X coordinate of the mouse pointer in the GameArena.
+	 * @return the current X coordinate of the mouse pointer in the GameArena, in world co-ordinates (allowing for the camera).
 	 */
 	public int getMousePositionX()
 	{
-		return mouseX;
+		return (int) this.mouseToWorld().getX();
 	}
 
 	/**
 	 * Gathers location informaiton on the mouse pointer.
-	 * @return the current Y coordinate of the mouse pointer in the GameArena.
+	 * @return the current Y coordinate of the mouse pointer in the GameArena, in world co-ordinates (allowing for the camera).
 	 */
 	public int getMousePositionY()
 	{
-		return mouseY;
+		return (int) this.mouseToWorld().getY();
+	}
+
+	/**
+	 * Internal method to convert the position of the mouse pointer from window co-ordinates to world co-ordinates.
+	 * @return the position of the mouse pointer in the world.
+	 */
+	private Point2D mouseToWorld()
+	{
+		long position = mousePosition;
+		return inverseCamera.transform(new Point2D.Double((int) (position >> 32), (int) position), null);
 	}
 
 }
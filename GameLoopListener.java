@@ -0,0 +1,26 @@
+/**
+ * Receives regular callbacks from the game loop of a GameArena.
+ *
+ * Updates are delivered at a fixed rate, regardless of how quickly the screen is being redrawn,
+ * so that a game behaves the same way on fast and slow computers. @see GameArena#setGameLoopListener
+ */
+public interface GameLoopListener
+{
+	/**
+	 * Called at a fixed rate to advance the state of the game by one step.
+	 *
+	 * @param timestep the amount of time represented by this step, in seconds. This is always the same value.
+	 */
+	public void update(double timestep);
+
+	/**
+	 * Called once before each frame is drawn, with the proportion of a timestep that has elapsed
+	 * since the last update. Objects can use this to place themselves part way between their previous
+	 * and current positions, so that movement looks smooth even when updates and frames are not in step.
+	 *
+	 * @param alpha the fraction of a timestep elapsed since the last update, between 0 (inclusive) and 1 (exclusive).
+	 */
+	public default void interpolate(double alpha)
+	{
+	}
+}
@@ -0,0 +1,76 @@
+/**
+ * Receives the keyboard and mouse events that have happened since the game last asked for them.
+ *
+ * Events are queued as they happen, and delivered in the order they happened when the game calls
+ * GameArena.drainInput. This means a key that is pressed and released again between two updates is still seen,
+ * and events are always delivered on the game's own thread. Only override the methods you need. @see GameArena#drainInput
+ */
+public interface InputListener
+{
+	/**
+	 * Called when a key is pressed. Keys that repeat while held down call this more than once.
+	 *
+	 * @param keyCode the key that was pressed, as one of the KeyEvent.VK_ constants.
+	 * @param time when the key was pressed, in the same units as System.nanoTime().
+	 */
+	public default void keyPressed(int keyCode, long time)
+	{
+	}
+
+	/**
+	 * Called when a key is released.
+	 *
+	 * @param keyCode the key that was released, as one of the KeyEvent.VK_ constants.
+	 * @param time when the key was released, in the same units as System.nanoTime().
+	 */
+	public default void keyReleased(int keyCode, long time)
+	{
+	}
+
+	/**
+	 * Called when a mouse button is pressed.
+	 *
+	 * @param button the button that was pressed: 1 for the left button, 2 for the middle button, 3 for the right button.
+	 * @param x the x co-ordinate of the mouse pointer, in world co-ordinates (allowing for the camera).
+	 * @param y the y co-ordinate of the mouse pointer, in world co-ordinates (allowing for the camera).
+	 * @param time when the button was pressed, in the same units as System.nanoTime().
+	 */
+	public default void mousePressed(int button, double x, double y, long time)
+	{
+	}
+
+	/**
+	 * Called when a mouse button is released.
+	 *
+	 * @param button the button that was released: 1 for the left button, 2 for the middle button, 3 for the right button.
+	 * @param x the x co-ordinate of the mouse pointer, in world co-ordinates (allowing for the camera).
+	 * @param y the y co-ordinate of the mouse pointer, in world co-ordinates (allowing for the camera).
+	 * @param time when the button was released, in the same units as System.nanoTime().
+	 */
+	public default void mouseReleased(int button, double x, double y, long time)
+	{
+	}
+
+	/**
+	 * Called when the mouse pointer moves, whether or not a button is held down.
+	 *
+	 * @param x the new x co-ordinate of the mouse pointer, in world co-ordinates (allowing for the camera).
+	 * @param y the new y co-ordinate of the mouse pointer, in world co-ordinates (allowing for the camera).
+	 * @param time when the mouse moved, in the same units as System.nanoTime().
+	 */
+	public default void mouseMoved(double x, double y, long time)
+	{
+	}
+
+	/**
+	 * Called when the mouse wheel is turned.
+	 *
+	 * @param rotation the distance turned, in notches. Positive values mean the wheel was turned towards the user.
+	 * @param x the x co-ordinate of the mouse pointer, in world co-ordinates (allowing for the camera).
+	 * @param y the y co-ordinate of the mouse pointer, in world co-ordinates (allowing for the camera).
+	 * @param time when the wheel was turned, in the same units as System.nanoTime().
+	 */
+	public default void mouseWheelMoved(double rotation, double x, double y, long time)
+	{
+	}
+}
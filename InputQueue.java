@@ -0,0 +1,132 @@
+import java.awt.geom.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A fixed size queue of keyboard and mouse events, passed from the thread that receives them
+ * to the thread running the game.
+ *
+ * Events are stored in arrays of primitive values that are allocated once and reused, so queueing an event
+ * never creates any objects. Exactly one thread may add events, and exactly one thread may remove them;
+ * under those conditions no locking is needed. If the game does not remove events quickly enough and the queue fills up,
+ * new events are discarded.
+ */
+class InputQueue
+{
+	public final static int KEY_PRESSED = 0;
+	public final static int KEY_RELEASED = 1;
+	public final static int MOUSE_PRESSED = 2;
+	public final static int MOUSE_RELEASED = 3;
+	public final static int MOUSE_MOVED = 4;
+	public final static int MOUSE_WHEEL = 5;
+
+	private final int capacity;
+	private final int mask;
+
+	private final int[] type;
+	private final int[] code;
+	private final int[] x;
+	private final int[] y;
+	private final long[] time;
+
+	// The number of events ever added, and the number ever removed. Each is only changed by one thread.
+	private final AtomicLong written = new AtomicLong();
+	private final AtomicLong read = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+
+	private final double[] point = new double[2];
+
+	/**
+	 * Creates an empty queue.
+	 *
+	 * @param size the number of events the queue can hold. This is rounded up to a power of two.
+	 */
+	public InputQueue(int size)
+	{
+		capacity = Integer.highestOneBit(Math.max(size - 1, 1)) << 1;
+		mask = capacity - 1;
+
+		type = new int[capacity];
+		code = new int[capacity];
+		x = new int[capacity];
+		y = new int[capacity];
+		time = new long[capacity];
+	}
+
+	/**
+	 * Adds an event to the end of the queue. Must only be called by the thread that receives events.
+	 *
+	 * @param eventType the kind of event, such as KEY_PRESSED.
+	 * @param eventCode the key code or mouse button the event refers to. For MOUSE_WHEEL, the rotation as the bits of a float.
+	 * @param px the x co-ordinate of the mouse pointer, in window co-ordinates.
+	 * @param py the y co-ordinate of the mouse pointer, in window co-ordinates.
+	 * @return true if the event was queued, false if the queue was full.
+	 */
+	public boolean offer(int eventType, int eventCode, int px, int py)
+	{
+		long w = written.get();
+
+		if (w - read.get() == capacity)
+		{
+			dropped.incrementAndGet();
+			return false;
+		}
+
+		int i = (int) w & mask;
+		type[i] = eventType;
+		code[i] = eventCode;
+		x[i] = px;
+		y[i] = py;
+		time[i] = System.nanoTime();
+
+		// Publish the event only once it has been completely written.
+		written.lazySet(w + 1);
+		return true;
+	}
+
+	/**
+	 * Removes every event currently in the queue, passing each to the given listener in the order they happened.
+	 * Must only be called by the thread running the game.
+	 *
+	 * @param listener the listener to deliver events to.
+	 * @param toWorld the transform from window co-ordinates to world co-ordinates, used for mouse positions.
+	 * @return the number of events delivered.
+	 */
+	public int drain(InputListener listener, AffineTransform toWorld)
+	{
+		long r = read.get();
+		long w = written.get();
+
+		for (long n = r; n < w; n++)
+		{
+			int i = (int) n & mask;
+
+			point[0] = x[i];
+			point[1] = y[i];
+			toWorld.transform(point, 0, point, 0, 1);
+
+			switch (type[i])
+			{
+				case KEY_PRESSED: listener.keyPressed(code[i], time[i]); break;
+				case KEY_RELEASED: listener.keyReleased(code[i], time[i]); break;
+				case MOUSE_PRESSED: listener.mousePressed(code[i], point[0], point[1], time[i]); break;
+				case MOUSE_RELEASED: listener.mouseReleased(code[i], point[0], point[1], time[i]); break;
+				case MOUSE_MOVED: listener.mouseMoved(point[0], point[1], time[i]); break;
+				case MOUSE_WHEEL: listener.mouseWheelMoved(Float.intBitsToFloat(code[i]), point[0], point[1], time[i]); break;
+			}
+
+			// Free each slot as soon as we are done with it, so the queue can refill while we work.
+			read.lazySet(n + 1);
+		}
+
+		return (int) (w - r);
+	}
+
+	/**
+	 * Determines how many events have been discarded because the queue was full.
+	 * @return the number of events discarded since the queue was created.
+	 */
+	public long getDropped()
+	{
+		return dropped.get();
+	}
+}
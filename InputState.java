@@ -0,0 +1,169 @@
+import java.util.concurrent.atomic.*;
+
+/**
+ * Records which keys and mouse buttons are held down, and which have been pressed or released since the last update.
+ *
+ * Every key code is represented by a single bit, so the state of the whole keyboard fits in a few kilobytes and
+ * any key can be checked in constant time. Changes are written by the thread that receives input events, and
+ * gathered once per update by the thread running the game; neither ever has to wait for the other.
+ */
+class InputState
+{
+	// The number of key codes tracked. This covers every KeyEvent.VK_ constant.
+	private final static int keyCount = 65536;
+	private final static int words = keyCount / 64;
+
+	// Written by the thread receiving input events.
+	private final AtomicLongArray down = new AtomicLongArray(words);
+	private final AtomicLongArray pressed = new AtomicLongArray(words);
+	private final AtomicLongArray released = new AtomicLongArray(words);
+	private final AtomicLongArray changedWords = new AtomicLongArray(words / 64);
+	private volatile int buttonsDown = 0;
+	private final AtomicInteger buttonsPressed = new AtomicInteger();
+	private final AtomicInteger buttonsReleased = new AtomicInteger();
+	private final AtomicLong wheel = new AtomicLong();
+
+	// Owned by the thread running the game: the changes gathered at the start of the current update.
+	private final long[] framePressed = new long[words];
+	private final long[] frameReleased = new long[words];
+	private final int[] frameWords = new int[words];
+	private int frameWordCount = 0;
+	private int frameButtonsPressed = 0;
+	private int frameButtonsReleased = 0;
+	private double frameWheel = 0;
+
+	/**
+	 * Records that a key has been pressed or released.
+	 *
+	 * @param keyCode the key, as one of the KeyEvent.VK_ constants.
+	 * @param isDown true if the key has been pressed, false if it has been released.
+	 */
+	public void setKey(int keyCode, boolean isDown)
+	{
+		if (keyCode < 0 || keyCode >= keyCount)
+			return;
+
+		int w = keyCode >>> 6;
+		long bit = 1L << keyCode;
+		long previous = isDown ? down.getAndAccumulate(w, bit, (a, b) -> a | b) : down.getAndAccumulate(w, ~bit, (a, b) -> a & b);
+
+		// Keys held down repeat, but only the first press counts.
+		if (((previous & bit) != 0) == isDown)
+			return;
+
+		(isDown ? pressed : released).getAndAccumulate(w, bit, (a, b) -> a | b);
+		changedWords.getAndAccumulate(w >>> 6, 1L << w, (a, b) -> a | b);
+	}
+
+	/**
+	 * Records that a mouse button has been pressed or released.
+	 *
+	 * @param button the button number, as returned by MouseEvent.getButton().
+	 * @param isDown true if the button has been pressed, false if it has been released.
+	 */
+	public void setButton(int button, boolean isDown)
+	{
+		if (button <= 0 || button >= 32)
+			return;
+
+		int bit = 1 << button;
+
+		if (isDown)
+		{
+			buttonsDown |= bit;
+			buttonsPressed.getAndAccumulate(bit, (a, b) -> a | b);
+		}
+		else
+		{
+			buttonsDown &= ~bit;
+			buttonsReleased.getAndAccumulate(bit, (a, b) -> a | b);
+		}
+	}
+
+	/**
+	 * Records that the mouse wheel has moved.
+	 *
+	 * @param rotation the distance moved, in notches. Positive values are towards the user.
+	 */
+	public void addWheel(double rotation)
+	{
+		long bits;
+		long next;
+
+		do
+		{
+			bits = wheel.get();
+			next = Double.doubleToRawLongBits(Double.longBitsToDouble(bits) + rotation);
+		}
+		while (!wheel.compareAndSet(bits, next));
+	}
+
+	/**
+	 * Gathers every change since this method was last called, ready to be queried by the game.
+	 * Must only be called by the thread running the game. This only visits keys that have actually changed.
+	 */
+	public void latch()
+	{
+		for (int i=0; i<frameWordCount; i++)
+		{
+			framePressed[frameWords[i]] = 0;
+			frameReleased[frameWords[i]] = 0;
+		}
+
+		frameWordCount = 0;
+
+		for (int s=0; s<changedWords.length(); s++)
+		{
+			long summary = changedWords.getAndSet(s, 0);
+
+			while (summary != 0)
+			{
+				int w = (s << 6) + Long.numberOfTrailingZeros(summary);
+				summary &= summary - 1;
+
+				framePressed[w] = pressed.getAndSet(w, 0);
+				frameReleased[w] = released.getAndSet(w, 0);
+				frameWords[frameWordCount++] = w;
+			}
+		}
+
+		frameButtonsPressed = buttonsPressed.getAndSet(0);
+		frameButtonsReleased = buttonsReleased.getAndSet(0);
+		frameWheel = Double.longBitsToDouble(wheel.getAndSet(0));
+	}
+
+	public boolean isKeyDown(int keyCode)
+	{
+		return keyCode >= 0 && keyCode < keyCount && (down.get(keyCode >>> 6) & (1L << keyCode)) != 0;
+	}
+
+	public boolean wasPressed(int keyCode)
+	{
+		return keyCode >= 0 && keyCode < keyCount && (framePressed[keyCode >>> 6] & (1L << keyCode)) != 0;
+	}
+
+	public boolean wasReleased(int keyCode)
+	{
+		return keyCode >= 0 && keyCode < keyCount && (frameReleased[keyCode >>> 6] & (1L << keyCode)) != 0;
+	}
+
+	public boolean isButtonDown(int button)
+	{
+		return button > 0 && button < 32 && (buttonsDown & (1 << button)) != 0;
+	}
+
+	public boolean wasButtonPressed(int button)
+	{
+		return button > 0 && button < 32 && (frameButtonsPressed & (1 << button)) != 0;
+	}
+
+	public boolean wasButtonReleased(int button)
+	{
+		return button > 0 && button < 32 && (frameButtonsReleased & (1 << button)) != 0;
+	}
+
+	public double getWheel()
+	{
+		return frameWheel;
+	}
+}
@@ -1,9 +1,12 @@
+import java.awt.*;
+import java.awt.geom.*;
+
 /**
  * Models a simple line. 
  * This class represents a Line object. When combined with the GameArena class,
  * instances of the Line class can be displayed on the screen.
  */
-public class Line 
+public class Line implements Drawable
 {
 	// The following instance variables define the
 	// information needed to represent a line.
@@ -18,9 +21,14 @@ public class Line
 	private double arrowSize;					// Size of the arrowhead on this line
 	private int[] arrowX = new int[3];			// Optinal coordinates of an arrowhead on this line (x)
 	private int[] arrowY = new int[3];			// Optinal coordinates of an arrowhead on this line (y)
+	private BasicStroke stroke;					// The stroke used to draw this line
+	private Line2D.Float shape;					// The line to draw, stopping short of any arrowhead. Replaced rather than changed, as it may be being drawn
+	private GameArena arena;					// The GameArena this line has been added to, if any
+	private double minX, minY, maxX, maxY;		// The area covered by this line, including its arrowhead
 
 	private int layer;							// The layer this line is drawn on
 	private String colour = "WHITE";			// The colour of this line
+	private Color resolvedColour = Color.WHITE;	// The colour of this line, ready for drawing
 												// Permissable colours are:
 												// BLACK, BLUE, CYAN, DARKGREY, GREY,
 												// GREEN, DARKGREEN, LIGHTGREY, MAGENTA, ORANGE,
@@ -79,8 +87,10 @@ public class Line
 
 	public void setArrowSize(double size)
 	{
+		Rectangle2D before = this.getBounds();
 		arrowSize = size;
 		this.recalculateArrowhead();
+		this.invalidate(before);
 	}
 
 	/**
@@ -104,12 +114,14 @@ public class Line
 	 */
 	public void setLinePosition(double x1, double y1, double x2, double y2)
 	{
+		Rectangle2D before = this.getBounds();
 		this.xStart = x1;
 		this.xEnd = x2;
 		this.yStart = y1;
 		this.yEnd = y2;
 
 		this.recalculateArrowhead();
+		this.invalidate(before);
 	}
 
 	/**
@@ -118,8 +130,11 @@ public class Line
 	 */
 	public void setWidth(double width)
 	{
+		Rectangle2D before = this.getBounds();
 		this.width = width;
+		this.stroke = RenderCache.getStroke((float)width);
 		this.recalculateArrowhead();
+		this.invalidate(before);
 	}
 
 	/**
@@ -140,6 +155,17 @@ public class Line
 		return colour;
 	}
 
+	/**
+	 * Sets the colour of this Line.
+	 * @param c the new colour of this Line, as a String value. Permissable colours are: BLACK, BLUE, CYAN, DARKGREY, GREY, GREEN, LIGHTGREY, MAGENTA, ORANGE, PINK, RED, WHITE, YELLOW or #RRGGBB.
+	 */
+	public void setColour(String c)
+	{
+		colour = c;
+		resolvedColour = GameArena.getColourFromString(c);
+		this.invalidate();
+	}
+
 	/**
 	 * Obtains the layer of this Line.
 	 * @return the layer of this Line.
@@ -180,7 +206,8 @@ public class Line
 	public Line(double x1, double y1, double x2, double y2, double thickness, String col, int lay)
 	{
 		width = thickness;
-		colour = col;
+		stroke = RenderCache.getStroke((float)thickness);
+		this.setColour(col);
 		layer = lay;
 		arrowSize = 0;
 		this.setLinePosition(x1, y1, x2, y2);
@@ -198,7 +225,8 @@ public class Line
 	public Line(double x1, double y1, double x2, double y2, double thickness, String col)
 	{
 		width = thickness;
-		colour = col;
+		stroke = RenderCache.getStroke((float)thickness);
+		this.setColour(col);
 		layer = 0;
 		arrowSize = 0;
 		this.setLinePosition(x1, y1, x2, y2);
@@ -227,5 +255,167 @@ public class Line
 		arrowY[0] = (int) yEnd;
 		arrowY[1] = (int) ((yStart + ly * arrowRatio) + dx * arrowSize);
 		arrowY[2] = (int) ((yStart + ly * arrowRatio) - dx * arrowSize);
+
+		// Work out the line to draw. If there is an arrowhead, the line stops where the arrowhead starts.
+		float ex = (float) xEnd;
+		float ey = (float) yEnd;
+
+		if (this.getArrowSize() > 0)
+		{
+			float ratio = (float) arrowRatio;
+			ex = (float) xStart + ((ex - (float) xStart) * ratio);
+			ey = (float) yStart + ((ey - (float) yStart) * ratio);
+		}
+
+		shape = new Line2D.Float((float) xStart, (float) yStart, ex, ey);
+
+		// Update the area covered by this line. Allow for the ends of the line, which extend beyond its end points by up to its width.
+		minX = Math.min(xStart, xEnd) - width;
+		minY = Math.min(yStart, yEnd) - width;
+		maxX = Math.max(xStart, xEnd) + width;
+		maxY = Math.max(yStart, yEnd) + width;
+
+		if (this.getArrowSize() > 0)
+		{
+			for (int i=0; i<3; i++)
+			{
+				minX = Math.min(minX, arrowX[i]);
+				minY = Math.min(minY, arrowY[i]);
+				maxX = Math.max(maxX, arrowX[i]);
+				maxY = Math.max(maxY, arrowY[i]);
+			}
+		}
+	}
+
+	/**
+	 * Draws this Line onto the given graphics context.
+	 * This is called by the GameArena every time the screen is redrawn - <p><B>YOU DO NOT (AND SHOULD NOT) NEED TO CALL THIS METHOD.</b></p>
+	 *
+	 * @param graphics the graphics context to draw onto.
+	 */
+	public void render(Graphics2D graphics)
+	{
+		graphics.setColor(resolvedColour);
+		graphics.setStroke(stroke);
+
+		if (arrowSize > 0)
+			graphics.fillPolygon(arrowX, arrowY, 3);
+
+		graphics.draw(shape);
+	}
+
+	/**
+	 * Determines the area of the screen covered by this Line, including its arrowhead.
+	 * @return the smallest rectangle enclosing this Line, in pixels.
+	 */
+	public Rectangle2D getBounds()
+	{
+		return new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY);
+	}
+
+	/**
+	 * Determines if any part of this Line lies within the given area. This is used to skip drawing objects that are not on the screen.
+	 *
+	 * @param x the x co-ordinate of the top left corner of the area.
+	 * @param y the y co-ordinate of the top left corner of the area.
+	 * @param w the width of the area.
+	 * @param h the height of the area.
+	 * @return true if the bounds of this Line overlap the given area, false otherwise.
+	 */
+	public boolean intersects(double x, double y, double w, double h)
+	{
+		return maxX > x && minX < x + w && maxY > y && minY < y + h;
+	}
+
+	/**
+	 * Determines if this Line is overlapping the given line.
+	 * 
+	 * @param l the line to test for collision
+	 * @return true of this line is overlapping the line l, false otherwise.
+	 */
+	public boolean collides(Line l)
+	{
+		return Collision.segmentSegment(xStart, yStart, xEnd, yEnd, width/2, l.xStart, l.yStart, l.xEnd, l.yEnd, l.width/2);
+	}
+
+	/**
+	 * Determines if this Line is overlapping the given ball.
+	 * 
+	 * @param b the ball to test for collision
+	 * @return true of this line is overlapping the ball b, false otherwise.
+	 */
+	public boolean collides(Ball b)
+	{
+		return b.collides(this);
+	}
+
+	/**
+	 * Determines if this Line is overlapping the given rectangle.
+	 * 
+	 * @param r the rectangle to test for collision
+	 * @return true of this line is overlapping the rectangle r, false otherwise.
+	 */
+	public boolean collides(Rectangle r)
+	{
+		return r.collides(this);
+	}
+
+	/**
+	 * Determines if this Line is overlapping the given text.
+	 * 
+	 * @param t the text to test for collision
+	 * @return true of this line is overlapping the text t, false otherwise.
+	 */
+	public boolean collides(Text t)
+	{
+		Rectangle2D r = t.getBounds();
+		return Collision.rectangleSegment(r.getX(), r.getY(), r.getWidth(), r.getHeight(), xStart, yStart, xEnd, yEnd, width/2);
+	}
+
+	/**
+	 * Tells this Line which GameArena it has been added to, so that it can let the GameArena know when it changes.
+	 * This is called by the GameArena when the Line is added or removed - <p><B>YOU DO NOT (AND SHOULD NOT) NEED TO CALL THIS METHOD.</b></p>
+	 *
+	 * @param arena the GameArena this Line has been added to, or null if it has been removed.
+	 */
+	public void setGameArena(GameArena arena)
+	{
+		this.arena = arena;
+	}
+
+	/**
+	 * Determines which GameArena this Line has been added to.
+	 * @return the GameArena this Line was last added to, or null if it is not in one.
+	 */
+	public GameArena getGameArena()
+	{
+		return arena;
+	}
+
+	/**
+	 * Lets the GameArena showing this Line know that the area it covers needs to be redrawn.
+	 * Called after a change that does not move this Line, such as a change of colour.
+	 */
+	private void invalidate()
+	{
+		GameArena a = arena;
+
+		if (a != null)
+			a.invalidate(this);
+	}
+
+	/**
+	 * Lets the GameArena showing this Line know that it has moved or changed shape, so that both the area it
+	 * used to cover and the area it covers now are redrawn. Called once, after the change has been made, so that
+	 * the old area can never be redrawn while this Line still appears to be there.
+	 *
+	 * @param before the area this Line covered before the change.
+	 */
+	private void invalidate(Rectangle2D before)
+	{
+		GameArena a = arena;
+
+		if (a != null)
+			a.invalidate(this, before.createUnion(this.getBounds()));
 	}
 }
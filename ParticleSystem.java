@@ -0,0 +1,609 @@
+import java.awt.*;
+import java.awt.geom.*;
+import java.awt.image.*;
+import java.util.*;
+
+/**
+ * Models a large number of small, short lived circles, such as sparks, smoke or rain.
+ * When combined with the GameArena class, a ParticleSystem can be displayed on the screen.
+ *
+ * Each particle is much cheaper than a Ball: rather than being a separate object, its position, velocity, size,
+ * colour and remaining lifetime are held in arrays shared by every particle in the system. Particles are moved
+ * all together by calling update, and the whole system counts as a single object in the GameArena.
+ */
+public class ParticleSystem implements Drawable
+{
+	// Particles no bigger than this are drawn as a single pixel.
+	private final static float pixelSize = 1.5f;
+
+	private int capacity;				// The maximum number of particles in this system
+	private int count = 0;				// The number of particles currently alive
+	private float[] x;					// The X coordinate of the centre of each particle
+	private float[] y;					// The Y coordinate of the centre of each particle
+	private float[] vx;					// The velocity of each particle on the x axis, in pixels per second
+	private float[] vy;					// The velocity of each particle on the y axis, in pixels per second
+	private float[] size;				// The diameter of each particle
+	private float[] life;				// The time each particle has left to live, in seconds
+	private int[] colour;				// The colour of each particle, as a packed ARGB value
+	private float gravityX = 0;			// The acceleration applied to every particle, in pixels per second per second
+	private float gravityY = 0;
+	private int layer;					// The layer this system is drawn on
+	private GameArena arena;			// The GameArena this system has been added to, if any
+
+	private double minX, minY, maxX, maxY;	// The area covered by the particles currently alive
+
+	// Each thread that draws particles has its own image to draw them onto, reused from frame to frame,
+	// so that several threads can draw at once.
+	private static ThreadLocal<BufferedImage> canvas = new ThreadLocal<>();
+
+	/**
+	 * The particles of a ParticleSystem sorted by which horizontal band of the screen they appear in,
+	 * so that each band can be drawn separately, at the same time as the others.
+	 */
+	static class Bands
+	{
+		private double sx, sy, tx, ty;		// The transform from world co-ordinates to pixels
+		private int[] start;				// Where the particles of each band start in order. The last entry is where the last band ends.
+		private int[] order;				// The index of each particle, band by band
+	}
+
+	/**
+	 * Constructor. Creates an empty ParticleSystem.
+	 * @param capacity The maximum number of particles that can be alive at once.
+	 */
+	public ParticleSystem(int capacity)
+	{
+		this(capacity, 0);
+	}
+
+	/**
+	 * Constructor. Creates an empty ParticleSystem.
+	 * @param capacity The maximum number of particles that can be alive at once.
+	 * @param layer The layer this system is to be drawn on. Objects with a higher layer number are always drawn on top of those with lower layer numbers.
+	 */
+	public ParticleSystem(int capacity, int layer)
+	{
+		this.capacity = capacity;
+		this.layer = layer;
+
+		x = new float[capacity];
+		y = new float[capacity];
+		vx = new float[capacity];
+		vy = new float[capacity];
+		size = new float[capacity];
+		life = new float[capacity];
+		colour = new int[capacity];
+
+		this.calculateBounds();
+	}
+
+	/**
+	 * Creates a new particle. New particles appear on the screen the next time update is called.
+	 *
+	 * @param px The x co-ordinate of the centre of the particle (in pixels)
+	 * @param py The y co-ordinate of the centre of the particle (in pixels)
+	 * @param dx The speed of the particle along the x axis (in pixels per second)
+	 * @param dy The speed of the particle along the y axis (in pixels per second)
+	 * @param diameter The diameter of the particle (in pixels)
+	 * @param col The colour of the particle (Permissable colours are: BLACK, BLUE, CYAN, DARKGREY, GREY, GREEN, LIGHTGREY, MAGENTA, ORANGE, PINK, RED, WHITE, YELLOW or #RRGGBB)
+	 * @param lifetime How long the particle lives for (in seconds)
+	 * @return true if the particle was created, or false if this system already holds as many particles as it can.
+	 */
+	public boolean emit(double px, double py, double dx, double dy, double diameter, String col, double lifetime)
+	{
+		return this.emit(px, py, dx, dy, diameter, GameArena.getColourFromString(col).getRGB(), lifetime);
+	}
+
+	/**
+	 * Creates a new particle. New particles appear on the screen the next time update is called.
+	 *
+	 * @param px The x co-ordinate of the centre of the particle (in pixels)
+	 * @param py The y co-ordinate of the centre of the particle (in pixels)
+	 * @param dx The speed of the particle along the x axis (in pixels per second)
+	 * @param dy The speed of the particle along the y axis (in pixels per second)
+	 * @param diameter The diameter of the particle (in pixels)
+	 * @param argb The colour of the particle, as a packed 0xAARRGGBB value. Partly transparent colours are supported.
+	 * @param lifetime How long the particle lives for (in seconds)
+	 * @return true if the particle was created, or false if this system already holds as many particles as it can.
+	 */
+	public boolean emit(double px, double py, double dx, double dy, double diameter, int argb, double lifetime)
+	{
+		if (count == capacity)
+			return false;
+
+		int i = count;
+		x[i] = (float) px;
+		y[i] = (float) py;
+		vx[i] = (float) dx;
+		vy[i] = (float) dy;
+		size[i] = (float) diameter;
+		colour[i] = argb;
+		life[i] = (float) lifetime;
+		count++;
+
+		// The area is redrawn by the next update, so there is no need to tell the GameArena about every particle.
+		minX = Math.min(minX, px - diameter/2);
+		minY = Math.min(minY, py - diameter/2);
+		maxX = Math.max(maxX, px + diameter/2);
+		maxY = Math.max(maxY, py + diameter/2);
+
+		return true;
+	}
+
+	/**
+	 * Moves every particle according to its velocity, and removes any particles that have reached the end of their life.
+	 * Call this once per frame.
+	 *
+	 * @param dt The time that has passed since the last update, in seconds.
+	 */
+	public void update(double dt)
+	{
+		float t = (float) dt;
+		float gx = gravityX * t;
+		float gy = gravityY * t;
+
+		// Remember where the particles were (including any emitted since the last update), so both old and new areas are redrawn.
+		Rectangle2D before = this.getBounds();
+		int previous = count;
+
+		int n = count;
+		int i = 0;
+
+		while (i < n)
+		{
+			life[i] -= t;
+
+			if (life[i] <= 0)
+			{
+				// Replace this particle with the last one, so that the live particles stay packed at the start of the arrays.
+				n--;
+				x[i] = x[n];
+				y[i] = y[n];
+				vx[i] = vx[n];
+				vy[i] = vy[n];
+				size[i] = size[n];
+				life[i] = life[n];
+				colour[i] = colour[n];
+				continue;
+			}
+
+			vx[i] += gx;
+			vy[i] += gy;
+			x[i] += vx[i] * t;
+			y[i] += vy[i] * t;
+			i++;
+		}
+
+		count = n;
+		this.calculateBounds();
+
+		if (previous > 0)
+			this.invalidate(count > 0 ? before.createUnion(this.getBounds()) : before);
+	}
+
+	/**
+	 * Sets an acceleration applied to every particle, such as gravity or wind.
+	 *
+	 * @param ax the acceleration along the x axis, in pixels per second per second.
+	 * @param ay the acceleration along the y axis, in pixels per second per second.
+	 */
+	public void setGravity(double ax, double ay)
+	{
+		gravityX = (float) ax;
+		gravityY = (float) ay;
+	}
+
+	/**
+	 * Removes every particle from this system.
+	 */
+	public void clear()
+	{
+		Rectangle2D before = this.getBounds();
+		int previous = count;
+
+		count = 0;
+		this.calculateBounds();
+
+		if (previous > 0)
+			this.invalidate(before);
+	}
+
+	/**
+	 * Determines how many particles are currently alive.
+	 * @return the number of particles in this system.
+	 */
+	public int getParticleCount()
+	{
+		return count;
+	}
+
+	/**
+	 * Determines the maximum number of particles this system can hold.
+	 * @return the capacity of this system.
+	 */
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	/**
+	 * Obtains the layer of this ParticleSystem.
+	 * @return the layer of this ParticleSystem.
+	 */
+	public int getLayer()
+	{
+		return layer;
+	}
+
+	/**
+	 * Draws every particle in this system onto the given graphics context.
+	 * This is called by the GameArena every time the screen is redrawn - <p><B>YOU DO NOT (AND SHOULD NOT) NEED TO CALL THIS METHOD.</b></p>
+	 *
+	 * @param graphics the graphics context to draw onto.
+	 */
+	public void render(Graphics2D graphics)
+	{
+		int n = count;
+
+		if (n == 0)
+			return;
+
+		AffineTransform t = graphics.getTransform();
+		Shape clip = graphics.getClip();
+
+		// Particles are normally drawn straight into an array of pixels, and copied to the screen in one go.
+		// That works as long as the view is only moved or zoomed. If it is rotated, fall back to drawing each particle in turn.
+		if (!isScaleAndTranslate(t))
+		{
+			Rectangle2D visible = clip == null ? null : clip.getBounds2D();
+			Ellipse2D.Float shape = new Ellipse2D.Float();
+			int current = 0;
+			boolean first = true;
+
+			for (int i=0; i<n; i++)
+			{
+				float r = size[i] / 2;
+
+				if (visible != null && (x[i] + r < visible.getMinX() || x[i] - r > visible.getMaxX() || y[i] + r < visible.getMinY() || y[i] - r > visible.getMaxY()))
+					continue;
+
+				if (first || current != colour[i])
+				{
+					first = false;
+					current = colour[i];
+					graphics.setColor(new Color(current, true));
+				}
+
+				shape.setFrame(x[i] - r, y[i] - r, size[i], size[i]);
+				graphics.fill(shape);
+			}
+			return;
+		}
+
+		double sx = t.getScaleX();
+		double sy = t.getScaleY();
+		double tx = t.getTranslateX();
+		double ty = t.getTranslateY();
+
+		// Work out which pixels need to be drawn: those covered by particles, and inside the clip. Everything is worked out in device pixels.
+		Rectangle2D area = new Rectangle2D.Double(minX * sx + tx, minY * sy + ty, (maxX - minX) * sx, (maxY - minY) * sy);
+
+		if (clip != null)
+		{
+			Rectangle2D c = clip.getBounds2D();
+			Rectangle2D.intersect(area, new Rectangle2D.Double(c.getX() * sx + tx, c.getY() * sy + ty, c.getWidth() * sx, c.getHeight() * sy), area);
+		}
+
+		int left = (int) Math.floor(area.getMinX());
+		int top = (int) Math.floor(area.getMinY());
+		int width = (int) Math.ceil(area.getMaxX()) - left;
+		int height = (int) Math.ceil(area.getMaxY()) - top;
+
+		if (width <= 0 || height <= 0)
+			return;
+
+		BufferedImage image = canvas.get();
+
+		if (image == null || image.getWidth() < width || image.getHeight() < height)
+		{
+			image = new BufferedImage(Math.max(width, image == null ? 0 : image.getWidth()), Math.max(height, image == null ? 0 : image.getHeight()), BufferedImage.TYPE_INT_ARGB_PRE);
+			canvas.set(image);
+		}
+
+		int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		int stride = image.getWidth();
+
+		for (int row=0; row<height; row++)
+			Arrays.fill(pixels, row * stride, row * stride + width, 0);
+
+		this.rasterize(pixels, 0xffffffff, 0, stride, left, top, width, height, sx, sy, tx, ty, null, 0, n);
+
+		graphics.setTransform(new AffineTransform());
+		graphics.drawImage(image, left, top, left + width, top + height, 0, 0, width, height, null);
+		graphics.setTransform(t);
+	}
+
+	/**
+	 * Sorts the particles by which horizontal band of the screen they appear in, ready for each band to be drawn by renderBand.
+	 * Particles that cross from one band into the next are listed in both. This is only possible when the view is not rotated.
+	 *
+	 * @param t the transform from world co-ordinates to pixels.
+	 * @param width the width of the screen, in pixels.
+	 * @param bandHeight the height of each band, in pixels.
+	 * @param bands the number of bands, from the top of the screen down.
+	 * @return the particles sorted into bands, or null if the view is rotated and the particles must be drawn using render instead.
+	 */
+	Bands sortIntoBands(AffineTransform t, int width, int bandHeight, int bands)
+	{
+		if (!isScaleAndTranslate(t))
+			return null;
+
+		Bands b = new Bands();
+		b.sx = t.getScaleX();
+		b.sy = t.getScaleY();
+		b.tx = t.getTranslateX();
+		b.ty = t.getTranslateY();
+		b.start = new int[bands + 1];
+
+		// Count the particles in each band, then place each one in turn: a counting sort, so this takes linear time.
+		// The game may move particles while we do this, so the bands of each particle are worked out once and remembered.
+		int n = count;
+		int total = 0;
+		int[] first = new int[n];
+		int[] last = new int[n];
+
+		for (int i=0; i<n; i++)
+		{
+			float cx = (float) (x[i] * b.sx + b.tx);
+			float cy = (float) (y[i] * b.sy + b.ty);
+			float rx = (float) (size[i] / 2 * b.sx);
+			float ry = (float) (size[i] / 2 * b.sy);
+
+			if (cx + rx < 0 || cx - rx >= width || cy + ry < 0 || cy - ry >= bands * bandHeight)
+			{
+				first[i] = 0;
+				last[i] = -1;
+				continue;
+			}
+
+			first[i] = Math.max((int) (cy - ry) / bandHeight, 0);
+			last[i] = Math.min((int) (cy + ry) / bandHeight, bands - 1);
+
+			for (int band = first[i]; band <= last[i]; band++)
+				b.start[band + 1]++;
+
+			total += last[i] - first[i] + 1;
+		}
+
+		for (int band=0; band<bands; band++)
+			b.start[band + 1] += b.start[band];
+
+		b.order = new int[total];
+
+		for (int i=0; i<n; i++)
+			for (int band = first[i]; band <= last[i]; band++)
+				b.order[b.start[band]++] = i;
+
+		// Placing the particles moved the start of each band along to the start of the next one. Move them back.
+		for (int band = bands; band > 0; band--)
+			b.start[band] = b.start[band - 1];
+
+		b.start[0] = 0;
+
+		return b;
+	}
+
+	/**
+	 * Draws the particles in one band of the screen straight into the pixels of the screen. Different bands can be drawn at the same time.
+	 *
+	 * @param b the particles, as sorted by sortIntoBands.
+	 * @param band the band to draw.
+	 * @param target the pixels of the screen, packed as one int per pixel in the same form as TYPE_INT_RGB or TYPE_INT_ARGB_PRE.
+	 * @param opaque true if target is in the form of TYPE_INT_RGB, which has no alpha channel.
+	 * @param stride the distance in target from one row of pixels to the next.
+	 * @param top the y co-ordinate of the top of the band, in pixels.
+	 * @param width the width of the band, in pixels.
+	 * @param height the height of the band, in pixels.
+	 */
+	void renderBand(Bands b, int band, int[] target, boolean opaque, int stride, int top, int width, int height)
+	{
+		this.rasterize(target, opaque ? 0x00ffffff : 0xffffffff, top * stride, stride, 0, top, width, height, b.sx, b.sy, b.tx, b.ty, b.order, b.start[band], b.start[band + 1]);
+	}
+
+	/**
+	 * Determines if a transform only moves and stretches, so that particles can still be drawn as pixels.
+	 *
+	 * @param t the transform.
+	 * @return false if the transform rotates, shears or flips.
+	 */
+	private static boolean isScaleAndTranslate(AffineTransform t)
+	{
+		return (t.getType() & ~(AffineTransform.TYPE_TRANSLATION | AffineTransform.TYPE_UNIFORM_SCALE | AffineTransform.TYPE_GENERAL_SCALE)) == 0;
+	}
+
+	/**
+	 * Draws the particles that fall within an area of device pixels straight into an array of pixels.
+	 *
+	 * @param target the pixels to draw into. Existing pixels are blended with, so partly transparent particles work as expected.
+	 * @param mask the bits of each pixel to keep once blended: used to leave the alpha channel empty when target has none.
+	 * @param offset the index in target of the top left pixel of the area.
+	 * @param stride the distance in target from one row of pixels to the next.
+	 * @param left the x co-ordinate of the left of the area, in device pixels.
+	 * @param top the y co-ordinate of the top of the area, in device pixels.
+	 * @param width the width of the area, in pixels.
+	 * @param height the height of the area, in pixels.
+	 * @param sx the horizontal scale from world co-ordinates to device pixels.
+	 * @param sy the vertical scale from world co-ordinates to device pixels.
+	 * @param tx the horizontal offset from world co-ordinates to device pixels.
+	 * @param ty the vertical offset from world co-ordinates to device pixels.
+	 * @param order the indexes of the particles to draw, or null to draw particles by index.
+	 * @param from the first entry in order (or first particle) to draw.
+	 * @param to the entry in order (or particle) to stop before.
+	 */
+	private void rasterize(int[] target, int mask, int offset, int stride, int left, int top, int width, int height, double sx, double sy, double tx, double ty, int[] order, int from, int to)
+	{
+		int right = left + width;
+		int bottom = top + height;
+
+		for (int j=from; j<to; j++)
+		{
+			int i = order == null ? j : order[j];
+
+			float cx = (float) (x[i] * sx + tx);
+			float cy = (float) (y[i] * sy + ty);
+			float rx = (float) (size[i] / 2 * sx);
+			float ry = (float) (size[i] / 2 * sy);
+
+			// Skip particles outside the area quickly; most particles are, when only part of the screen is being redrawn.
+			if (cx + rx < left || cx - rx >= right || cy + ry < top || cy - ry >= bottom)
+				continue;
+
+			int argb = premultiply(colour[i]);
+
+			if (rx * 2 <= pixelSize && ry * 2 <= pixelSize)
+			{
+				int px = (int) Math.floor(cx);
+				int py = (int) Math.floor(cy);
+
+				if (px >= left && px < right && py >= top && py < bottom)
+				{
+					int p = offset + (py - top) * stride + (px - left);
+					target[p] = blend(argb, target[p]) & mask;
+				}
+
+				continue;
+			}
+
+			// Fill the circle (an ellipse, if the view is stretched) one row at a time.
+			int y0 = Math.max((int) Math.ceil(cy - ry - 0.5f), top);
+			int y1 = Math.min((int) Math.floor(cy + ry - 0.5f), bottom - 1);
+
+			for (int py = y0; py <= y1; py++)
+			{
+				float dy = (py + 0.5f - cy) / ry;
+				float dx = rx * (float) Math.sqrt(Math.max(1 - dy*dy, 0));
+				int x0 = Math.max((int) Math.ceil(cx - dx - 0.5f), left);
+				int x1 = Math.min((int) Math.floor(cx + dx - 0.5f), right - 1);
+				int row = offset + (py - top) * stride - left;
+
+				for (int px = x0; px <= x1; px++)
+					target[row + px] = blend(argb, target[row + px]) & mask;
+			}
+		}
+	}
+
+	/**
+	 * Converts a colour to premultiplied form, as used by the image particles are drawn into.
+	 */
+	private static int premultiply(int argb)
+	{
+		int a = argb >>> 24;
+
+		if (a == 255)
+			return argb;
+
+		int r = ((argb >> 16) & 0xff) * a / 255;
+		int g = ((argb >> 8) & 0xff) * a / 255;
+		int b = (argb & 0xff) * a / 255;
+
+		return (a << 24) | (r << 16) | (g << 8) | b;
+	}
+
+	/**
+	 * Draws a premultiplied colour over another.
+	 */
+	private static int blend(int src, int dst)
+	{
+		int a = src >>> 24;
+
+		if (a == 255 || dst == 0)
+			return src;
+
+		int inverse = 255 - a;
+		int ra = a + ((dst >>> 24) * inverse + 127) / 255;
+		int rr = ((src >> 16) & 0xff) + (((dst >> 16) & 0xff) * inverse + 127) / 255;
+		int rg = ((src >> 8) & 0xff) + (((dst >> 8) & 0xff) * inverse + 127) / 255;
+		int rb = (src & 0xff) + ((dst & 0xff) * inverse + 127) / 255;
+
+		return (ra << 24) | (rr << 16) | (rg << 8) | rb;
+	}
+
+	/**
+	 * Determines the area of the screen covered by this ParticleSystem.
+	 * @return the smallest rectangle enclosing every particle, in pixels.
+	 */
+	public Rectangle2D getBounds()
+	{
+		return new Rectangle2D.Double(minX, minY, Math.max(maxX - minX, 0), Math.max(maxY - minY, 0));
+	}
+
+	/**
+	 * Determines if any particle in this ParticleSystem might lie within the given area.
+	 *
+	 * @param x the x co-ordinate of the top left corner of the area.
+	 * @param y the y co-ordinate of the top left corner of the area.
+	 * @param w the width of the area.
+	 * @param h the height of the area.
+	 * @return true if the bounds of this ParticleSystem overlap the given area, false otherwise.
+	 */
+	public boolean intersects(double x, double y, double w, double h)
+	{
+		return count > 0 && maxX > x && minX < x + w && maxY > y && minY < y + h;
+	}
+
+	/**
+	 * Tells this ParticleSystem which GameArena it has been added to, so that it can let the GameArena know when it changes.
+	 * This is called by the GameArena when the ParticleSystem is added or removed - <p><B>YOU DO NOT (AND SHOULD NOT) NEED TO CALL THIS METHOD.</b></p>
+	 *
+	 * @param arena the GameArena this ParticleSystem has been added to, or null if it has been removed.
+	 */
+	public void setGameArena(GameArena arena)
+	{
+		this.arena = arena;
+	}
+
+	/**
+	 * Determines which GameArena this ParticleSystem has been added to.
+	 * @return the GameArena this ParticleSystem was last added to, or null if it is not in one.
+	 */
+	public GameArena getGameArena()
+	{
+		return arena;
+	}
+
+	/**
+	 * Recalculates the area covered by the particles currently alive.
+	 */
+	private void calculateBounds()
+	{
+		double x0 = Double.MAX_VALUE, y0 = Double.MAX_VALUE, x1 = -Double.MAX_VALUE, y1 = -Double.MAX_VALUE;
+
+		for (int i=0; i<count; i++)
+		{
+			float r = size[i] / 2;
+			x0 = Math.min(x0, x[i] - r);
+			y0 = Math.min(y0, y[i] - r);
+			x1 = Math.max(x1, x[i] + r);
+			y1 = Math.max(y1, y[i] + r);
+		}
+
+		minX = x0;
+		minY = y0;
+		maxX = x1;
+		maxY = y1;
+	}
+
+	/**
+	 * Lets the GameArena showing this ParticleSystem know that an area needs to be redrawn.
+	 * This is called once per update, covering where the particles were and where they are now.
+	 *
+	 * @param area the area to redraw.
+	 */
+	private void invalidate(Rectangle2D area)
+	{
+		GameArena a = arena;
+
+		if (a != null)
+			a.invalidate(this, area);
+	}
+}
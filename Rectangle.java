@@ -1,9 +1,12 @@
+import java.awt.*;
+import java.awt.geom.*;
+
 /**
  * Models a simple, solid rectangle. 
  * This class represents a Rectabgle object. When combined with the GameArena class,
  * instances of the Rectangle class can be displayed on the screen.
  */
-public class Rectangle 
+public class Rectangle implements Drawable
 {
 	// The following instance variables define the
 	// information needed to represent a Rectangle
@@ -16,6 +19,8 @@ public class Rectangle
 	private double height;				// The height of this Rectangle
 	private int layer;				// The layer this Rectangle is on.
 	private String colour;				// The colour of this Rectangle
+	private Color resolvedColour;		// The colour of this Rectangle, ready for drawing
+	private GameArena arena;			// The GameArena this Rectangle has been added to, if any
 
 										// Permissable colours are:
 										// BLACK, BLUE, CYAN, DARKGREY, GREY,
@@ -37,7 +42,7 @@ public class Rectangle
 		this.yPosition = y;
 		this.width = w;
 		this.height = h;
-		this.colour = col;
+		this.setColour(col);
 		this.layer = 0;
 	}	
 									
@@ -56,7 +61,7 @@ public class Rectangle
 		this.yPosition = y;
 		this.width = w;
 		this.height = h;
-		this.colour = col;
+		this.setColour(col);
 		this.layer = layer;
 	}	
 			
@@ -84,7 +89,9 @@ public class Rectangle
 	 */
 	public void setXPosition(double x)
 	{
+		Rectangle2D before = this.getBounds();
 		this.xPosition = x;
+		this.invalidate(before);
 	}
 
 	/**
@@ -93,7 +100,9 @@ public class Rectangle
 	 */
 	public void setYPosition(double y)
 	{
+		Rectangle2D before = this.getBounds();
 		this.yPosition = y;
+		this.invalidate(before);
 	}
 
 	/**
@@ -111,7 +120,9 @@ public class Rectangle
 	 */
 	public void setWidth(double w)
 	{
+		Rectangle2D before = this.getBounds();
 		width = w;
+		this.invalidate(before);
 	}
 
 	/**
@@ -129,7 +140,9 @@ public class Rectangle
 	 */
 	public void setHeight(double h)
 	{
+		Rectangle2D before = this.getBounds();
 		height = h;
+		this.invalidate(before);
 	}
 
 	/**
@@ -157,6 +170,8 @@ public class Rectangle
 	public void setColour(String c)
 	{
 		colour = c;
+		resolvedColour = GameArena.getColourFromString(c);
+		this.invalidate();
 	}
 
 	/**
@@ -167,8 +182,10 @@ public class Rectangle
 	 */
 	public void move(double dx, double dy)
 	{
+		Rectangle2D before = this.getBounds();
 		xPosition += dx;
 		yPosition += dy;
+		this.invalidate(before);
 	}
 
 	/**
@@ -179,6 +196,122 @@ public class Rectangle
 	 */
 	public boolean collides(Rectangle r)
 	{
-		return (xPosition + width > r.xPosition && xPosition < r.xPosition + r.width) && (yPosition + height > r.yPosition && yPosition < r.yPosition + r.height);
+		return Collision.rectangleRectangle(xPosition, yPosition, width, height, r.xPosition, r.yPosition, r.width, r.height);
+	}
+
+	/**
+	 * Determines if this Rectangle is overlapping the given ball.
+	 * 
+	 * @param b the ball to test for collision
+	 * @return true of this rectangle is overlapping the ball b, false otherwise.
+	 */
+	public boolean collides(Ball b)
+	{
+		return b.collides(this);
+	}
+
+	/**
+	 * Determines if this Rectangle is overlapping the given line.
+	 * 
+	 * @param l the line to test for collision
+	 * @return true of this rectangle is overlapping the line l, false otherwise.
+	 */
+	public boolean collides(Line l)
+	{
+		return Collision.rectangleSegment(xPosition, yPosition, width, height, l.getXStart(), l.getYStart(), l.getXEnd(), l.getYEnd(), l.getWidth()/2);
+	}
+
+	/**
+	 * Determines if this Rectangle is overlapping the given text.
+	 * 
+	 * @param t the text to test for collision
+	 * @return true of this rectangle is overlapping the text t, false otherwise.
+	 */
+	public boolean collides(Text t)
+	{
+		Rectangle2D r = t.getBounds();
+		return Collision.rectangleRectangle(xPosition, yPosition, width, height, r.getX(), r.getY(), r.getWidth(), r.getHeight());
+	}
+
+	/**
+	 * Draws this Rectangle onto the given graphics context.
+	 * This is called by the GameArena every time the screen is redrawn - <p><B>YOU DO NOT (AND SHOULD NOT) NEED TO CALL THIS METHOD.</b></p>
+	 *
+	 * @param graphics the graphics context to draw onto.
+	 */
+	public void render(Graphics2D graphics)
+	{
+		graphics.setColor(resolvedColour);
+		graphics.fillRect((int)xPosition, (int)yPosition, (int)width, (int)height);
+	}
+
+	/**
+	 * Determines the area of the screen covered by this Rectangle.
+	 * @return the smallest rectangle enclosing this Rectangle, in pixels.
+	 */
+	public Rectangle2D getBounds()
+	{
+		return new Rectangle2D.Double(xPosition, yPosition, width, height);
+	}
+
+	/**
+	 * Determines if any part of this Rectangle lies within the given area. This is used to skip drawing objects that are not on the screen.
+	 *
+	 * @param x the x co-ordinate of the top left corner of the area.
+	 * @param y the y co-ordinate of the top left corner of the area.
+	 * @param w the width of the area.
+	 * @param h the height of the area.
+	 * @return true if the bounds of this Rectangle overlap the given area, false otherwise.
+	 */
+	public boolean intersects(double x, double y, double w, double h)
+	{
+		return xPosition + width > x && xPosition < x + w && yPosition + height > y && yPosition < y + h;
+	}
+
+	/**
+	 * Tells this Rectangle which GameArena it has been added to, so that it can let the GameArena know when it changes.
+	 * This is called by the GameArena when the Rectangle is added or removed - <p><B>YOU DO NOT (AND SHOULD NOT) NEED TO CALL THIS METHOD.</b></p>
+	 *
+	 * @param arena the GameArena this Rectangle has been added to, or null if it has been removed.
+	 */
+	public void setGameArena(GameArena arena)
+	{
+		this.arena = arena;
+	}
+
+	/**
+	 * Determines which GameArena this Rectangle has been added to.
+	 * @return the GameArena this Rectangle was last added to, or null if it is not in one.
+	 */
+	public GameArena getGameArena()
+	{
+		return arena;
+	}
+
+	/**
+	 * Lets the GameArena showing this Rectangle know that the area it covers needs to be redrawn.
+	 * Called after a change that does not move this Rectangle, such as a change of colour.
+	 */
+	private void invalidate()
+	{
+		GameArena a = arena;
+
+		if (a != null)
+			a.invalidate(this);
+	}
+
+	/**
+	 * Lets the GameArena showing this Rectangle know that it has moved or changed shape, so that both the area it
+	 * used to cover and the area it covers now are redrawn. Called once, after the change has been made, so that
+	 * the old area can never be redrawn while this Rectangle still appears to be there.
+	 *
+	 * @param before the area this Rectangle covered before the change.
+	 */
+	private void invalidate(Rectangle2D before)
+	{
+		GameArena a = arena;
+
+		if (a != null)
+			a.invalidate(this, before.createUnion(this.getBounds()));
 	}
 }
@@ -0,0 +1,66 @@
+import java.awt.*;
+import java.util.*;
+
+/**
+ * Shares the Font and BasicStroke objects used to draw Text and Line objects, so that
+ * they are created once rather than on every frame.
+ *
+ * Each cache holds a bounded number of entries, discarding the least recently used entry when full.
+ */
+class RenderCache
+{
+	// The maximum number of fonts and strokes that are remembered.
+	private final static int maximumEntries = 64;
+
+	private static Map<Integer, Font> fonts = new LinkedHashMap<Integer, Font>(16, 0.75f, true)
+	{
+		protected boolean removeEldestEntry(Map.Entry<Integer, Font> eldest)
+		{
+			return size() > maximumEntries;
+		}
+	};
+
+	private static Map<Float, BasicStroke> strokes = new LinkedHashMap<Float, BasicStroke>(16, 0.75f, true)
+	{
+		protected boolean removeEldestEntry(Map.Entry<Float, BasicStroke> eldest)
+		{
+			return size() > maximumEntries;
+		}
+	};
+
+	/**
+	 * Obtains the font used to draw Text of the given size.
+	 * @param size the size of the font, in points.
+	 * @return a bold SansSerif Font of the given size.
+	 */
+	public static synchronized Font getFont(int size)
+	{
+		Font f = fonts.get(size);
+
+		if (f == null)
+		{
+			f = new Font("SansSerif", Font.BOLD, size);
+			fonts.put(size, f);
+		}
+
+		return f;
+	}
+
+	/**
+	 * Obtains the stroke used to draw a Line of the given width.
+	 * @param width the width of the line, in pixels.
+	 * @return a BasicStroke of the given width.
+	 */
+	public static synchronized BasicStroke getStroke(float width)
+	{
+		BasicStroke s = strokes.get(width);
+
+		if (s == null)
+		{
+			s = new BasicStroke(width);
+			strokes.put(width, s);
+		}
+
+		return s;
+	}
+}
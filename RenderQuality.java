@@ -0,0 +1,28 @@
+/**
+ * The rendering quality profiles supported by a GameArena.
+ * Higher quality profiles produce smoother graphics, but take longer to draw each frame.
+ *
+ * @see GameArena#setRenderQuality
+ */
+public enum RenderQuality
+{
+	/**
+	 * Fastest drawing. Antialiasing and all other quality settings are turned off.
+	 */
+	SPEED,
+
+	/**
+	 * Antialiased shapes and text, with the remaining settings left at the platform defaults.
+	 */
+	BALANCED,
+
+	/**
+	 * Best looking drawing. This is the default.
+	 */
+	QUALITY,
+
+	/**
+	 * Rendering hints provided by the user. This is reported by GameArena#getRenderQuality, but cannot be passed to GameArena#setRenderQuality. @see GameArena#setRenderingHints
+	 */
+	CUSTOM
+}
@@ -0,0 +1,353 @@
+import java.awt.geom.*;
+import java.util.*;
+
+/**
+ * A uniform grid over the world, recording which objects overlap each grid cell.
+ *
+ * This allows the objects near a given point or area to be found without checking every object
+ * in the GameArena, and allows overlapping objects to be found by only comparing objects that share a cell.
+ * Only cells that contain objects take up any memory, so the world can be any size.
+ *
+ * Objects can also be added along with the layer and position in the draw list they are drawn at,
+ * so that the objects in an area can be found in the order they should be drawn.
+ */
+class SpatialHash
+{
+	// Objects that would cover more than this many cells are kept in a separate list, and checked against everything.
+	private final static int maximumCells = 4096;
+
+	private double cellSize;
+	private HashMap<Long, ArrayList<Drawable>> cells = new HashMap<>();
+	private IdentityHashMap<Drawable, int[]> ranges = new IdentityHashMap<>();
+	private ArrayList<Drawable> oversized = new ArrayList<>();
+	private IdentityHashMap<Drawable, long[]> order = new IdentityHashMap<>();
+
+	/**
+	 * Creates an empty grid.
+	 *
+	 * @param cellSize the width and height of each cell, in world co-ordinates.
+	 */
+	public SpatialHash(double cellSize)
+	{
+		this.cellSize = cellSize;
+	}
+
+	/**
+	 * Adds an object to the grid.
+	 *
+	 * @param d the object to add.
+	 */
+	public synchronized void add(Drawable d)
+	{
+		if (ranges.containsKey(d))
+			return;
+
+		int[] r = this.cellRange(d.getBounds());
+		ranges.put(d, r);
+		this.insert(d, r);
+	}
+
+	/**
+	 * Adds an object to the grid, recording where it is drawn. If the object is already in the grid,
+	 * only where it is drawn is changed.
+	 *
+	 * @param d the object to add.
+	 * @param layer the layer the object is drawn on.
+	 * @param sequence the position of the object within its layer. Objects with lower numbers are drawn first.
+	 */
+	public synchronized void add(Drawable d, int layer, long sequence)
+	{
+		// A new array each time, never changed, so that it can still be read once the grid has been released.
+		order.put(d, new long[] {layer, sequence});
+		this.add(d);
+	}
+
+	/**
+	 * Removes an object from the grid.
+	 *
+	 * @param d the object to remove.
+	 */
+	public synchronized void remove(Drawable d)
+	{
+		order.remove(d);
+		int[] r = ranges.remove(d);
+
+		if (r != null)
+			this.delete(d, r);
+	}
+
+	/**
+	 * Moves an object to the right cells after it has changed position or size.
+	 *
+	 * @param d the object that has changed.
+	 */
+	public synchronized void update(Drawable d)
+	{
+		int[] old = ranges.get(d);
+
+		if (old == null)
+			return;
+
+		int[] r = this.cellRange(d.getBounds());
+
+		if (Arrays.equals(old, r))
+			return;
+
+		this.delete(d, old);
+		this.insert(d, r);
+		ranges.put(d, r);
+	}
+
+	/**
+	 * Removes every object from the grid.
+	 */
+	public synchronized void clear()
+	{
+		cells.clear();
+		ranges.clear();
+		oversized.clear();
+		order.clear();
+	}
+
+	/**
+	 * Finds every object whose bounds overlap the given area.
+	 *
+	 * @param x the x co-ordinate of the top left corner of the area.
+	 * @param y the y co-ordinate of the top left corner of the area.
+	 * @param w the width of the area.
+	 * @param h the height of the area.
+	 * @param results the list to add the objects found to. Each object is added at most once.
+	 */
+	public synchronized void query(double x, double y, double w, double h, List<Drawable> results)
+	{
+		int[] q = this.cellRange(new Rectangle2D.Double(x, y, w, h));
+
+		for (Drawable d : oversized)
+			if (d.intersects(x, y, w, h))
+				results.add(d);
+
+		for (int cx = q[0]; cx <= q[2]; cx++)
+		{
+			for (int cy = q[1]; cy <= q[3]; cy++)
+			{
+				ArrayList<Drawable> cell = cells.get(key(cx, cy));
+
+				if (cell == null)
+					continue;
+
+				for (Drawable d : cell)
+				{
+					// An object may be in several cells. Only report it from the first cell it shares with the query.
+					int[] r = ranges.get(d);
+
+					if (cx == Math.max(q[0], r[0]) && cy == Math.max(q[1], r[1]) && d.intersects(x, y, w, h))
+						results.add(d);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds every object whose bounds overlap the given area, along with where each is drawn, ready to be put
+	 * into drawing order by sortByOrder. Every object in the grid must have been added along with where it is drawn.
+	 *
+	 * When the area covers at least as many cells as there are cells holding objects, checking every object
+	 * in turn is quicker than searching the grid. Nothing is found in that case.
+	 *
+	 * @param x the x co-ordinate of the top left corner of the area.
+	 * @param y the y co-ordinate of the top left corner of the area.
+	 * @param w the width of the area.
+	 * @param h the height of the area.
+	 * @param results the list to add the objects found to.
+	 * @param orders the list to add where each object found is drawn to, in the same order as results.
+	 * @return true if the area was searched, or false if it is too large to search.
+	 */
+	public synchronized boolean queryWithOrder(double x, double y, double w, double h, List<Drawable> results, List<long[]> orders)
+	{
+		int[] q = this.cellRange(new Rectangle2D.Double(x, y, w, h));
+
+		if ((long) (q[2] - q[0] + 1) * (q[3] - q[1] + 1) >= cells.size())
+			return false;
+
+		int start = results.size();
+		this.query(x, y, w, h, results);
+
+		for (int i = start; i < results.size(); i++)
+			orders.add(order.get(results.get(i)));
+
+		return true;
+	}
+
+	/**
+	 * Sorts the objects found by queryWithOrder into the order they are drawn. This does not use the grid,
+	 * so it can be done after the grid has been released for other threads to change.
+	 *
+	 * @param results the objects found.
+	 * @param orders where each object is drawn, as found along with it.
+	 * @return the layer of each object, in the same order as results, once sorted.
+	 */
+	public static int[] sortByOrder(List<Drawable> results, List<long[]> orders)
+	{
+		Integer[] index = new Integer[results.size()];
+		for (int i=0; i<index.length; i++)
+			index[i] = i;
+
+		Arrays.sort(index, (a, b) -> {
+			long[] oa = orders.get(a);
+			long[] ob = orders.get(b);
+			return oa[0] != ob[0] ? Long.compare(oa[0], ob[0]) : Long.compare(oa[1], ob[1]);
+		});
+
+		Drawable[] sorted = new Drawable[index.length];
+		int[] layers = new int[index.length];
+
+		for (int i=0; i<index.length; i++)
+		{
+			sorted[i] = results.get(index[i]);
+			layers[i] = (int) orders.get(index[i])[0];
+		}
+
+		for (int i=0; i<sorted.length; i++)
+			results.set(i, sorted[i]);
+
+		return layers;
+	}
+
+	/**
+	 * Finds every pair of objects whose bounds overlap. The pairs are collected first, so that the caller is free
+	 * to move or remove objects while handling them, without the grid changing underneath it.
+	 *
+	 * @param pairs the list to add the pairs to: the two objects of each pair are added one after the other.
+	 */
+	public synchronized void findOverlappingPairs(List<Drawable> pairs)
+	{
+		for (Map.Entry<Long, ArrayList<Drawable>> e : cells.entrySet())
+		{
+			long k = e.getKey();
+			ArrayList<Drawable> cell = e.getValue();
+
+			for (int i=0; i<cell.size(); i++)
+			{
+				Drawable a = cell.get(i);
+				int[] ra = ranges.get(a);
+
+				for (int j=i+1; j<cell.size(); j++)
+				{
+					Drawable b = cell.get(j);
+					int[] rb = ranges.get(b);
+
+					// A pair of objects may share several cells. Only report it from the first cell they share.
+					if (k == key(Math.max(ra[0], rb[0]), Math.max(ra[1], rb[1])) && overlaps(a, b))
+					{
+						pairs.add(a);
+						pairs.add(b);
+					}
+				}
+			}
+		}
+
+		// Objects too large for the grid are compared against everything else.
+		for (int i=0; i<oversized.size(); i++)
+		{
+			Drawable a = oversized.get(i);
+
+			for (Map.Entry<Drawable, int[]> e : ranges.entrySet())
+			{
+				Drawable b = e.getKey();
+
+				if (!isOversized(e.getValue()) && overlaps(a, b))
+				{
+					pairs.add(a);
+					pairs.add(b);
+				}
+			}
+
+			for (int j=i+1; j<oversized.size(); j++)
+			{
+				if (overlaps(a, oversized.get(j)))
+				{
+					pairs.add(a);
+					pairs.add(oversized.get(j));
+				}
+			}
+		}
+	}
+
+	private static boolean overlaps(Drawable a, Drawable b)
+	{
+		Rectangle2D r = a.getBounds();
+		return b.intersects(r.getX(), r.getY(), r.getWidth(), r.getHeight());
+	}
+
+	private static boolean isOversized(int[] r)
+	{
+		return (long) (r[2] - r[0] + 1) * (r[3] - r[1] + 1) > maximumCells;
+	}
+
+	private int[] cellRange(Rectangle2D b)
+	{
+		int minX = (int) Math.floor(b.getMinX() / cellSize);
+		int minY = (int) Math.floor(b.getMinY() / cellSize);
+		int maxX = (int) Math.floor(b.getMaxX() / cellSize);
+		int maxY = (int) Math.floor(b.getMaxY() / cellSize);
+
+		return new int[] {minX, minY, maxX, maxY};
+	}
+
+	private void insert(Drawable d, int[] r)
+	{
+		if (isOversized(r))
+		{
+			oversized.add(d);
+			return;
+		}
+
+		for (int cx = r[0]; cx <= r[2]; cx++)
+		{
+			for (int cy = r[1]; cy <= r[3]; cy++)
+			{
+				long k = key(cx, cy);
+				ArrayList<Drawable> cell = cells.get(k);
+
+				if (cell == null)
+				{
+					cell = new ArrayList<>(4);
+					cells.put(k, cell);
+				}
+
+				cell.add(d);
+			}
+		}
+	}
+
+	private void delete(Drawable d, int[] r)
+	{
+		if (isOversized(r))
+		{
+			oversized.remove(d);
+			return;
+		}
+
+		for (int cx = r[0]; cx <= r[2]; cx++)
+		{
+			for (int cy = r[1]; cy <= r[3]; cy++)
+			{
+				long k = key(cx, cy);
+				ArrayList<Drawable> cell = cells.get(k);
+
+				if (cell != null)
+				{
+					cell.remove(d);
+
+					if (cell.isEmpty())
+						cells.remove(k);
+				}
+			}
+		}
+	}
+
+	private static long key(int cx, int cy)
+	{
+		return ((long) cx << 32) | (cy & 0xffffffffL);
+	}
+}
@@ -1,11 +1,18 @@
+import java.awt.*;
+import java.awt.geom.*;
+import java.awt.font.*;
+
 /**
  * Models a simple piece of text. 
  * This class represents a Text object. When combined with the GameArena class,
  * instances of the Text class can be displayed on the screen to show display
  * an appropriate piece of text.
  */
-public class Text
+public class Text implements Drawable
 {
+	// Used to measure text. Antialiased with fractional metrics, to match how the GameArena draws it at best quality.
+	private final static FontRenderContext fontRenderContext = new FontRenderContext(null, true, true);
+
 	// The following instance variables define the
 	// information needed to represent a line.
 	// Feel free to more instance variables if you think it will 
@@ -14,9 +21,13 @@ public class Text
 	private double xPosition;			// The X coordinate of the start of this text 
 	private double yPosition;			// The Y coordinate of the start of this text 
 	private int size;					// The font size of this text 
+	private Font font;					// The font used to draw this text
+	private Rectangle2D textBounds;		// The size of this text, relative to its position (calculated when needed)
+	private GameArena arena;			// The GameArena this text has been added to, if any
 	private int layer;					// The layer this text is drawn on
 	private String text;				// The actual text to display
 	private String colour;				// The colour of this text
+	private Color resolvedColour;		// The colour of this text, ready for drawing
 
 										// Permissable colours are:
 										// BLACK, BLUE, CYAN, DARKGREY, GREY,
@@ -57,7 +68,11 @@ public class Text
 	 */
 	public void setSize(int size)
 	{
+		Rectangle2D before = this.getBounds();
 		this.size = size;
+		this.font = RenderCache.getFont(size);
+		this.textBounds = null;
+		this.invalidate(before);
 	}
 
 	/**
@@ -102,8 +117,9 @@ public class Text
 		this.xPosition = x;
 		this.yPosition = y;
 		this.size = size;
+		this.font = RenderCache.getFont(size);
 		this.text = text;
-		this.colour = col;
+		this.setColour(col);
 		this.layer = layer;
 	}	
 
@@ -121,8 +137,9 @@ public class Text
 		this.xPosition = x;
 		this.yPosition = y;
 		this.size = size;
+		this.font = RenderCache.getFont(size);
 		this.text = text;
-		this.colour = col;
+		this.setColour(col);
 		this.layer = 0;
 	}	
 
@@ -133,7 +150,10 @@ public class Text
 	 */
 	public void setText(String text)
 	{
+		Rectangle2D before = this.getBounds();
 		this.text = text;
+		this.textBounds = null;
+		this.invalidate(before);
 	}
 
 	/**
@@ -144,6 +164,8 @@ public class Text
 	public void setColour(String colour)
 	{
 		this.colour = colour;
+		this.resolvedColour = GameArena.getColourFromString(colour);
+		this.invalidate();
 	}
 
 	/**
@@ -152,7 +174,9 @@ public class Text
 	 */
 	public void setXPosition(double x)
 	{
+		Rectangle2D before = this.getBounds();
 		this.xPosition = x;
+		this.invalidate(before);
 	}
 
 	/**
@@ -161,7 +185,159 @@ public class Text
 	 */
 	public void setYPosition(double y)
 	{
+		Rectangle2D before = this.getBounds();
 		this.yPosition = y;
+		this.invalidate(before);
+	}
+
+	/**
+	 * Draws this Text onto the given graphics context.
+	 * This is called by the GameArena every time the screen is redrawn - <p><B>YOU DO NOT (AND SHOULD NOT) NEED TO CALL THIS METHOD.</b></p>
+	 *
+	 * @param graphics the graphics context to draw onto.
+	 */
+	public void render(Graphics2D graphics)
+	{
+		graphics.setFont(font);
+		graphics.setColor(resolvedColour);
+		graphics.drawString(text, (float)xPosition, (float)yPosition);
+	}
+
+	/**
+	 * Determines the area of the screen covered by this Text.
+	 * @return the smallest rectangle enclosing this Text, in pixels.
+	 */
+	public Rectangle2D getBounds()
+	{
+		Rectangle2D b = this.getTextBounds();
+		return new Rectangle2D.Double(xPosition + b.getX(), yPosition + b.getY(), b.getWidth(), b.getHeight());
+	}
+
+	/**
+	 * Determines if any part of this Text lies within the given area. This is used to skip drawing objects that are not on the screen.
+	 *
+	 * @param x the x co-ordinate of the top left corner of the area.
+	 * @param y the y co-ordinate of the top left corner of the area.
+	 * @param w the width of the area.
+	 * @param h the height of the area.
+	 * @return true if the bounds of this Text overlap the given area, false otherwise.
+	 */
+	public boolean intersects(double x, double y, double w, double h)
+	{
+		Rectangle2D b = this.getTextBounds();
+		double left = xPosition + b.getX();
+		double top = yPosition + b.getY();
+
+		return left + b.getWidth() > x && left < x + w && top + b.getHeight() > y && top < y + h;
+	}
+
+	/**
+	 * Internal method to measure this text, relative to its position. The measurement is remembered until the text or its size changes.
+	 * @return the bounds of this text, relative to its position.
+	 */
+	private Rectangle2D getTextBounds()
+	{
+		Rectangle2D b = textBounds;
+
+		if (b == null)
+		{
+			b = font.getStringBounds(text == null ? "" : text, fontRenderContext);
+			textBounds = b;
+		}
+
+		return b;
+	}
+
+	/**
+	 * Determines if this Text is overlapping the given text.
+	 * 
+	 * @param t the text to test for collision
+	 * @return true of this text is overlapping the text t, false otherwise.
+	 */
+	public boolean collides(Text t)
+	{
+		Rectangle2D a = this.getBounds();
+		Rectangle2D b = t.getBounds();
+		return Collision.rectangleRectangle(a.getX(), a.getY(), a.getWidth(), a.getHeight(), b.getX(), b.getY(), b.getWidth(), b.getHeight());
+	}
+
+	/**
+	 * Determines if this Text is overlapping the given ball.
+	 * 
+	 * @param b the ball to test for collision
+	 * @return true of this text is overlapping the ball b, false otherwise.
+	 */
+	public boolean collides(Ball b)
+	{
+		return b.collides(this);
+	}
+
+	/**
+	 * Determines if this Text is overlapping the given rectangle.
+	 * 
+	 * @param r the rectangle to test for collision
+	 * @return true of this text is overlapping the rectangle r, false otherwise.
+	 */
+	public boolean collides(Rectangle r)
+	{
+		return r.collides(this);
 	}
 
+	/**
+	 * Determines if this Text is overlapping the given line.
+	 * 
+	 * @param l the line to test for collision
+	 * @return true of this text is overlapping the line l, false otherwise.
+	 */
+	public boolean collides(Line l)
+	{
+		return l.collides(this);
+	}
+
+	/**
+	 * Tells this Text which GameArena it has been added to, so that it can let the GameArena know when it changes.
+	 * This is called by the GameArena when the Text is added or removed - <p><B>YOU DO NOT (AND SHOULD NOT) NEED TO CALL THIS METHOD.</b></p>
+	 *
+	 * @param arena the GameArena this Text has been added to, or null if it has been removed.
+	 */
+	public void setGameArena(GameArena arena)
+	{
+		this.arena = arena;
+	}
+
+	/**
+	 * Determines which GameArena this Text has been added to.
+	 * @return the GameArena this Text was last added to, or null if it is not in one.
+	 */
+	public GameArena getGameArena()
+	{
+		return arena;
+	}
+
+	/**
+	 * Lets the GameArena showing this Text know that the area it covers needs to be redrawn.
+	 * Called after a change that does not move this Text, such as a change of colour.
+	 */
+	private void invalidate()
+	{
+		GameArena a = arena;
+
+		if (a != null)
+			a.invalidate(this);
+	}
+
+	/**
+	 * Lets the GameArena showing this Text know that it has moved or changed shape, so that both the area it
+	 * used to cover and the area it covers now are redrawn. Called once, after the change has been made, so that
+	 * the old area can never be redrawn while this Text still appears to be there.
+	 *
+	 * @param before the area this Text covered before the change.
+	 */
+	private void invalidate(Rectangle2D before)
+	{
+		GameArena a = arena;
+
+		if (a != null)
+			a.invalidate(this, before.createUnion(this.getBounds()));
+	}
 }